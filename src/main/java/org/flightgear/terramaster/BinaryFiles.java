@@ -0,0 +1,87 @@
+package org.flightgear.terramaster;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.logging.Logger;
+
+/**
+ * The small binary files TerraMaster keeps its caches in. Each starts with a magic number and a
+ * version, so a file of another format or version is ignored instead of misread, and is written
+ * to a temporary file first, so a crash never leaves half a file behind.
+ */
+final class BinaryFiles {
+
+  private static final Logger log = Logger.getLogger(TerraMaster.LOGGER_CATEGORY);
+
+  @FunctionalInterface
+  interface IOConsumer<T> {
+    void accept(T t) throws IOException;
+  }
+
+  @FunctionalInterface
+  interface IOFunction<T, R> {
+    R apply(T t) throws IOException;
+  }
+
+  private BinaryFiles() {
+  }
+
+  /**
+   * Reads the file after checking its header.
+   *
+   * @return what the reader returned or <code>null</code> if there is no file yet or it has
+   *         another magic number or version
+   * @throws IOException if the file can't be read
+   */
+  static <R> R readVersioned(Path file, int magic, int version, IOFunction<DataInputStream, R> reader)
+      throws IOException {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      if (in.readInt() != magic || in.readInt() != version) {
+        log.warning(() -> "Ignoring " + file + " of an unknown format");
+        return null;
+      }
+      return reader.apply(in);
+    } catch (NoSuchFileException e) {
+      // first run
+      return null;
+    }
+  }
+
+  /**
+   * Writes the header and what the writer writes to a temporary file next to the file and then
+   * moves it into place.
+   */
+  static void atomicWrite(Path file, int magic, int version, IOConsumer<DataOutputStream> writer)
+      throws IOException {
+    Path tmp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".part");
+    try {
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+        out.writeInt(magic);
+        out.writeInt(version);
+        writer.accept(out);
+      }
+      atomicMove(tmp, file);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  /**
+   * Replaces the target, atomically where the file system can.
+   */
+  static void atomicMove(Path source, Path target) throws IOException {
+    try {
+      Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+}
@@ -70,8 +70,7 @@ public class CoordinateCalculation {
   				newLon, arrivalLat, arrivalLon);
   		if( newDistance < 10)
   			break;
-  		TileName tile = TileName.getTile(TileName.computeTileName(
-  				(int) newLat, (int) newLon));
+  		TileName tile = TileName.getTile((int) newLon, (int) newLat);
   		if (tile != null) {
   			tiles.add(tile);
   		}
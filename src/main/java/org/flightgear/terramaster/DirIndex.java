@@ -0,0 +1,263 @@
+package org.flightgear.terramaster;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A parsed .dirindex. The file is read once into compact entries.
+ *
+ * <pre>
+ * version:1
+ * path:Models/Aircraft
+ * d:A320:0123...
+ * f:a.ac:0123...:2342
+ * t:e001n51.txz:0123...:4711
+ * </pre>
+ */
+public final class DirIndex {
+
+  public static final DirIndex EMPTY = new DirIndex(null, null, Collections.emptyList());
+
+  private static final int HASH_LENGTH = 20;
+
+  private static final char[] HEXARRAY = "0123456789abcdef".toCharArray();
+
+  public enum Type {
+    DIRECTORY('d'), FILE('f'), TARBALL('t');
+
+    private final char code;
+
+    Type(char code) {
+      this.code = code;
+    }
+
+    public char getCode() {
+      return code;
+    }
+
+    static Type of(char code) {
+      switch (code) {
+      case 'd':
+        return DIRECTORY;
+      case 'f':
+        return FILE;
+      case 't':
+        return TARBALL;
+      default:
+        return null;
+      }
+    }
+  }
+
+  /**
+   * One line of the .dirindex describing a directory, file or tarball.
+   */
+  public static final class Entry {
+    private final Type type;
+    private final String name;
+    private final byte[] hash;
+    private final long size;
+
+    Entry(Type type, String name, byte[] hash, long size) {
+      this.type = type;
+      this.name = name;
+      this.hash = hash;
+      this.size = size;
+    }
+
+    public Type getType() {
+      return type;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    /** The name up to the first dot, i.e. the tile name of a tarball. */
+    public String getBaseName() {
+      int dot = name.indexOf('.');
+      return dot < 0 ? name : name.substring(0, dot);
+    }
+
+    /** The SHA-1 or <code>null</code> if the line had none. */
+    public byte[] getHash() {
+      return hash;
+    }
+
+    /** The SHA-1 as lower case hex, empty if the line had none. */
+    public String getHashHex() {
+      return toHex(hash);
+    }
+
+    /** The size in bytes, -1 for directories. */
+    public long getSize() {
+      return size;
+    }
+  }
+
+  private final String version;
+  private final String path;
+  private final List<Entry> entries;
+  private final Map<String, Entry> byName;
+  private Map<String, Entry> byBaseName;
+
+  private DirIndex(String version, String path, List<Entry> entries) {
+    this.version = version;
+    this.path = path;
+    this.entries = entries;
+    this.byName = new HashMap<>(entries.size() * 2);
+    for (Entry entry : entries) {
+      byName.put(entry.name, entry);
+    }
+  }
+
+  /**
+   * Parses the text of a .dirindex. Unknown and broken lines are skipped.
+   */
+  public static DirIndex parse(String text) {
+    if (text == null || text.isEmpty()) {
+      return EMPTY;
+    }
+    String version = null;
+    String path = null;
+    List<Entry> entries = new ArrayList<>();
+    int length = text.length();
+    int start = 0;
+    while (start < length) {
+      int end = text.indexOf('\n', start);
+      if (end < 0) {
+        end = length;
+      }
+      int lineEnd = end > start && text.charAt(end - 1) == '\r' ? end - 1 : end;
+      int colon = text.indexOf(':', start);
+      if (colon > start && colon < lineEnd) {
+        if (colon == start + 1 && Type.of(text.charAt(start)) != null) {
+          Entry entry = parseEntry(Type.of(text.charAt(start)), text, colon + 1, lineEnd);
+          if (entry != null) {
+            entries.add(entry);
+          }
+        } else if (text.startsWith("version", start) && colon == start + 7) {
+          version = text.substring(colon + 1, lineEnd);
+        } else if (text.startsWith("path", start) && colon == start + 4) {
+          path = text.substring(colon + 1, lineEnd);
+        }
+      }
+      start = end + 1;
+    }
+    return new DirIndex(version, path, Collections.unmodifiableList(entries));
+  }
+
+  private static Entry parseEntry(Type type, String text, int start, int end) {
+    int nameEnd = text.indexOf(':', start);
+    if (nameEnd < 0 || nameEnd > end) {
+      nameEnd = end;
+    }
+    if (nameEnd == start) {
+      return null;
+    }
+    String name = text.substring(start, nameEnd);
+    byte[] hash = null;
+    long size = -1;
+    if (nameEnd < end) {
+      int hashEnd = text.indexOf(':', nameEnd + 1);
+      if (hashEnd < 0 || hashEnd > end) {
+        hashEnd = end;
+      }
+      hash = parseHash(text, nameEnd + 1, hashEnd);
+      if (hashEnd < end) {
+        size = parseSize(text, hashEnd + 1, end);
+      }
+    }
+    return new Entry(type, name, hash, size);
+  }
+
+  private static byte[] parseHash(String text, int start, int end) {
+    if (end - start != 2 * HASH_LENGTH) {
+      return null;
+    }
+    byte[] hash = new byte[HASH_LENGTH];
+    for (int i = 0; i < HASH_LENGTH; i++) {
+      int hi = Character.digit(text.charAt(start + 2 * i), 16);
+      int lo = Character.digit(text.charAt(start + 2 * i + 1), 16);
+      if (hi < 0 || lo < 0) {
+        return null;
+      }
+      hash[i] = (byte) ((hi << 4) | lo);
+    }
+    return hash;
+  }
+
+  private static long parseSize(String text, int start, int end) {
+    long size = 0;
+    for (int i = start; i < end; i++) {
+      int digit = text.charAt(i) - '0';
+      if (digit < 0 || digit > 9) {
+        return -1;
+      }
+      size = size * 10 + digit;
+    }
+    return end > start ? size : -1;
+  }
+
+  static String toHex(byte[] bytes) {
+    if (bytes == null) {
+      return "";
+    }
+    char[] hexChars = new char[bytes.length * 2];
+    for (int j = 0; j < bytes.length; j++) {
+      int v = bytes[j] & 0xFF;
+      hexChars[j * 2] = HEXARRAY[v >>> 4];
+      hexChars[j * 2 + 1] = HEXARRAY[v & 0x0F];
+    }
+    return new String(hexChars);
+  }
+
+  /** The version header or <code>null</code>. */
+  public String getVersion() {
+    return version;
+  }
+
+  /** The path header or <code>null</code>. */
+  public String getPath() {
+    return path;
+  }
+
+  public List<Entry> getEntries() {
+    return entries;
+  }
+
+  public boolean isEmpty() {
+    return entries.isEmpty();
+  }
+
+  /** The entry with exactly this name or <code>null</code>. */
+  public Entry get(String name) {
+    return byName.get(name);
+  }
+
+  /**
+   * The entry whose name without extension matches, e.g. the tarball e001n51.txz for the tile
+   * e001n51. If there are several the last one wins.
+   */
+  public synchronized Entry getByBaseName(String baseName) {
+    if (byBaseName == null) {
+      byBaseName = new HashMap<>(entries.size() * 2);
+      for (Entry entry : entries) {
+        byBaseName.put(entry.getBaseName(), entry);
+      }
+    }
+    return byBaseName.get(baseName);
+  }
+
+  /** Rough number of bytes held, used to bound caches. */
+  long estimateSize() {
+    long size = 64;
+    for (Entry entry : entries) {
+      size += 80 + 2L * entry.name.length();
+    }
+    return size;
+  }
+}
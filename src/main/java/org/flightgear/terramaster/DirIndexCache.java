@@ -0,0 +1,132 @@
+package org.flightgear.terramaster;
+
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+
+/**
+ * The parsed .dirindex files of the current session. Bounded by the memory the entries take,
+ * the least recently used directories are dropped first. Entries older than the TTL are
+ * checked with the mirror again. What survives a restart is the local .dirindex together
+ * with its {@link DirIndexStore} entry.
+ */
+public class DirIndexCache {
+
+  /** Default time a .dirindex is trusted without asking the mirror. */
+  public static final long DEFAULT_TTL_MINUTES = 15;
+
+  /** Default memory bound of the cached lines. */
+  public static final long DEFAULT_MEMORY_LIMIT = 8 * 1024 * 1024;
+
+  private static final class Key {
+    private final Path root;
+    private final String dir;
+
+    Key(Path root, String dir) {
+      this.root = root;
+      this.dir = dir;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * root.hashCode() + dir.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return Objects.equals(root, other.root) && Objects.equals(dir, other.dir);
+    }
+  }
+
+  private static final class Cached {
+    final DirIndex dirIndex;
+    final long checked;
+    final long weight;
+
+    Cached(DirIndex dirIndex, long checked) {
+      this.dirIndex = dirIndex;
+      this.checked = checked;
+      this.weight = dirIndex.estimateSize();
+    }
+  }
+
+  private final LinkedHashMap<Key, Cached> entries = new LinkedHashMap<>(256, 0.75f, true);
+  private final long memoryLimit;
+  private volatile long ttl;
+  private long memory;
+
+  public DirIndexCache(long ttlMillis, long memoryLimit) {
+    this.ttl = ttlMillis;
+    this.memoryLimit = memoryLimit;
+  }
+
+  public void setTtl(long ttlMillis) {
+    this.ttl = ttlMillis;
+  }
+
+  public long getTtl() {
+    return ttl;
+  }
+
+  /**
+   * True if something checked with the mirror at the given time can still be trusted.
+   */
+  public boolean isFresh(long checked) {
+    return System.currentTimeMillis() - checked < ttl;
+  }
+
+  /**
+   * The .dirindex or <code>null</code> if unknown or expired.
+   */
+  public synchronized DirIndex get(Path root, String dir) {
+    Key key = new Key(root, dir);
+    Cached cached = entries.get(key);
+    if (cached == null) {
+      return null;
+    }
+    if (!isFresh(cached.checked)) {
+      entries.remove(key);
+      memory -= cached.weight;
+      return null;
+    }
+    return cached.dirIndex;
+  }
+
+  /**
+   * Adds a .dirindex checked with the mirror at the given time.
+   */
+  public synchronized void put(Path root, String dir, DirIndex dirIndex, long checked) {
+    Cached cached = new Cached(dirIndex, checked);
+    if (cached.weight > memoryLimit) {
+      return;
+    }
+    Cached old = entries.put(new Key(root, dir), cached);
+    if (old != null) {
+      memory -= old.weight;
+    }
+    memory += cached.weight;
+    Iterator<Cached> eldest = entries.values().iterator();
+    while (memory > memoryLimit && eldest.hasNext()) {
+      memory -= eldest.next().weight;
+      eldest.remove();
+    }
+  }
+
+  public synchronized void clear() {
+    entries.clear();
+    memory = 0;
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  synchronized long getMemory() {
+    return memory;
+  }
+}
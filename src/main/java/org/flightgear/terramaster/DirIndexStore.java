@@ -0,0 +1,176 @@
+/*
+ * terramaster a application to download Flightgear scenery.
+ * Copyright (C) 2018  Keith Paterson (Portree Kid)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.flightgear.terramaster;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Remembers the HTTP validators (ETag, Last-Modified) the mirror sent with each .dirindex
+ * below a scenery root and when the local copy was last checked, so the next sync, even
+ * after a restart, can trust a recent copy or ask whether it is still current.
+ * Stored in a small binary file in the root.
+ */
+public class DirIndexStore {
+
+  static final String STORE_FILENAME = ".terramaster-dirindex";
+
+  private static final int MAGIC = 0x544d4449; // TMDI
+  private static final int VERSION = 2;
+
+  private static final Logger log = Logger.getLogger(TerraMaster.LOGGER_CATEGORY);
+
+  /**
+   * The validators of one .dirindex.
+   */
+  public static final class Entry {
+    /** The ETag or <code>null</code>. */
+    final String etag;
+    /** The Last-Modified header or <code>null</code>. */
+    final String lastModified;
+    /** The size of the local copy the validators belong to. */
+    final long size;
+    /** When the mirror last confirmed the local copy. */
+    final long checked;
+
+    public Entry(String etag, String lastModified, long size, long checked) {
+      this.etag = etag;
+      this.lastModified = lastModified;
+      this.size = size;
+      this.checked = checked;
+    }
+
+    public long getChecked() {
+      return checked;
+    }
+
+    /**
+     * The headers for a conditional GET.
+     */
+    public Map<String, String> conditionalHeaders() {
+      Map<String, String> headers = new HashMap<>();
+      if (etag != null) {
+        headers.put("If-None-Match", etag);
+      }
+      if (lastModified != null) {
+        headers.put("If-Modified-Since", lastModified);
+      }
+      return headers;
+    }
+  }
+
+  private final Path root;
+  private final Path storeFile;
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+  private volatile boolean dirty;
+
+  public DirIndexStore(Path root) {
+    this.root = root.toAbsolutePath().normalize();
+    this.storeFile = this.root.resolve(STORE_FILENAME);
+  }
+
+  public Path getRoot() {
+    return root;
+  }
+
+  /**
+   * The validators of the directory if they still belong to a local copy of the given size.
+   */
+  public Entry get(String dir, long localSize) {
+    Entry e = entries.get(dir);
+    return e != null && e.size == localSize ? e : null;
+  }
+
+  public void put(String dir, Entry entry) {
+    entries.put(dir, entry);
+    dirty = true;
+  }
+
+  public void remove(String dir) {
+    if (entries.remove(dir) != null) {
+      dirty = true;
+    }
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * Reads the store. A missing or unreadable file just gives an empty store.
+   */
+  public void load() {
+    entries.clear();
+    try {
+      Map<String, Entry> loaded = BinaryFiles.readVersioned(storeFile, MAGIC, VERSION, in -> {
+        int count = in.readInt();
+        Map<String, Entry> read = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+          String dir = in.readUTF();
+          String etag = in.readUTF();
+          String lastModified = in.readUTF();
+          long size = in.readLong();
+          long checked = in.readLong();
+          read.put(dir,
+              new Entry(etag.isEmpty() ? null : etag, lastModified.isEmpty() ? null : lastModified, size, checked));
+        }
+        return read;
+      });
+      if (loaded != null) {
+        entries.putAll(loaded);
+      }
+    } catch (IOException e) {
+      log.log(Level.WARNING, "Couldn't read dirindex store " + storeFile, e);
+      entries.clear();
+    }
+    dirty = false;
+  }
+
+  /**
+   * Writes the store if anything changed since it was loaded.
+   */
+  public synchronized void save() throws IOException {
+    if (!dirty || !Files.isDirectory(root)) {
+      return;
+    }
+    dirty = false;
+    Map<String, Entry> snapshot = new HashMap<>(entries);
+    try {
+      BinaryFiles.atomicWrite(storeFile, MAGIC, VERSION, out -> {
+        out.writeInt(snapshot.size());
+        for (Map.Entry<String, Entry> e : snapshot.entrySet()) {
+          out.writeUTF(e.getKey());
+          out.writeUTF(e.getValue().etag == null ? "" : e.getValue().etag);
+          out.writeUTF(e.getValue().lastModified == null ? "" : e.getValue().lastModified);
+          out.writeLong(e.getValue().size);
+          out.writeLong(e.getValue().checked);
+        }
+      });
+    } catch (IOException e) {
+      dirty = true;
+      throw e;
+    }
+  }
+}
@@ -0,0 +1,163 @@
+/*
+ * terramaster a application to download Flightgear scenery.
+ * Copyright (C) 2018  Keith Paterson (Portree Kid)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.flightgear.terramaster;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Remembers the SHA-1 of the files below a scenery root together with the size and
+ * modification time they had when they were hashed. As long as both are unchanged the
+ * file doesn't have to be read again. Stored in a small binary file in the root.
+ */
+public class FileHashCache {
+
+  static final String CACHE_FILENAME = ".terramaster-hashes";
+
+  private static final int MAGIC = 0x544d4843; // TMHC
+  private static final int VERSION = 1;
+  private static final int HASH_LENGTH = 20;
+
+  private static final Logger log = Logger.getLogger(TerraMaster.LOGGER_CATEGORY);
+
+  private static final class Entry {
+    final long size;
+    final long modified;
+    final byte[] sha1;
+
+    Entry(long size, long modified, byte[] sha1) {
+      this.size = size;
+      this.modified = modified;
+      this.sha1 = sha1;
+    }
+  }
+
+  private final Path root;
+  private final Path cacheFile;
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+  private volatile boolean dirty;
+
+  public FileHashCache(Path root) {
+    this.root = root.toAbsolutePath().normalize();
+    this.cacheFile = this.root.resolve(CACHE_FILENAME);
+  }
+
+  public Path getRoot() {
+    return root;
+  }
+
+  /**
+   * Returns the cached hash of the file if it is still valid, <code>null</code> otherwise.
+   */
+  public byte[] get(Path file, BasicFileAttributes attrs) {
+    Entry e = entries.get(key(file));
+    if (e == null || e.size != attrs.size() || e.modified != attrs.lastModifiedTime().toMillis()) {
+      return null;
+    }
+    return e.sha1.clone();
+  }
+
+  /**
+   * Records the hash of the file with the given attributes.
+   */
+  public void put(Path file, BasicFileAttributes attrs, byte[] sha1) {
+    if (sha1.length != HASH_LENGTH) {
+      return;
+    }
+    entries.put(key(file), new Entry(attrs.size(), attrs.lastModifiedTime().toMillis(), sha1.clone()));
+    dirty = true;
+  }
+
+  public void remove(Path file) {
+    if (entries.remove(key(file)) != null) {
+      dirty = true;
+    }
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * Reads the cache file. A missing or unreadable file just gives an empty cache.
+   */
+  public void load() {
+    entries.clear();
+    try {
+      Map<String, Entry> loaded = BinaryFiles.readVersioned(cacheFile, MAGIC, VERSION, in -> {
+        int count = in.readInt();
+        Map<String, Entry> read = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+          String name = in.readUTF();
+          long size = in.readLong();
+          long modified = in.readLong();
+          byte[] sha1 = new byte[HASH_LENGTH];
+          in.readFully(sha1);
+          read.put(name, new Entry(size, modified, sha1));
+        }
+        return read;
+      });
+      if (loaded != null) {
+        entries.putAll(loaded);
+        log.fine(() -> "Loaded " + entries.size() + " hashes from " + cacheFile);
+      }
+    } catch (IOException e) {
+      log.log(Level.WARNING, "Couldn't read hash cache " + cacheFile, e);
+      entries.clear();
+    }
+    dirty = false;
+  }
+
+  /**
+   * Writes the cache file if anything changed since it was loaded.
+   */
+  public synchronized void save() throws IOException {
+    if (!dirty || !Files.isDirectory(root)) {
+      return;
+    }
+    dirty = false;
+    Map<String, Entry> snapshot = new HashMap<>(entries);
+    try {
+      BinaryFiles.atomicWrite(cacheFile, MAGIC, VERSION, out -> {
+        out.writeInt(snapshot.size());
+        for (Map.Entry<String, Entry> e : snapshot.entrySet()) {
+          out.writeUTF(e.getKey());
+          out.writeLong(e.getValue().size);
+          out.writeLong(e.getValue().modified);
+          out.write(e.getValue().sha1);
+        }
+      });
+    } catch (IOException e) {
+      dirty = true;
+      throw e;
+    }
+  }
+
+  /** The path relative to the root with / as separator, so the file can be shared between OSs. */
+  private String key(Path file) {
+    return root.relativize(file.toAbsolutePath().normalize()).toString().replace('\\', '/');
+  }
+}
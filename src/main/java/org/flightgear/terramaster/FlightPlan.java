@@ -31,7 +31,7 @@ public class FlightPlan extends JDialog {
     	if( selectedDeparture != null && selectedArrival != null )
     	{
         List<TileName> tiles = CoordinateCalculation.findAllTiles(selectedDeparture.lat, selectedDeparture.lon, selectedArrival.lat, selectedArrival.lon);
-        terraMaster.frame.map.setSelection(tiles);
+        terraMaster.frame.map.setRoute(tiles);
         terraMaster.frame.map.repaint();    	  
     	}
     	setVisible(false);
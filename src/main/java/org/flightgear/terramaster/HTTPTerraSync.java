@@ -1,8 +1,9 @@
 package org.flightgear.terramaster;
 
-import java.io.ByteArrayInputStream;
+import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FilterInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -10,24 +11,35 @@ import java.net.HttpURLConnection;
 import java.net.SocketException;
 import java.net.URL;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import javax.swing.JOptionPane;
-import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 
 import org.flightgear.terramaster.dns.WeightedUrl;
 
 import org.kamranzafar.jtar.TarEntry;
 import org.kamranzafar.jtar.TarInputStream;
+import org.tukaani.xz.XZIOException;
 import org.tukaani.xz.XZInputStream;
 
 /**
@@ -45,6 +57,12 @@ public class HTTPTerraSync extends Thread implements TileService {
 
     private static final int AIRPORT_MAX = 30000;
 
+    /** Size of the per worker buffer used to stream downloads to disk. */
+    private static final int DOWNLOAD_BUFFER_SIZE = 256 * 1024;
+
+    /** Number of download workers if nothing is configured. 1 gives the old sequential sync. */
+    static final int DEFAULT_SYNC_THREADS = 4;
+
     private static final Logger log = Logger.getLogger(TerraMaster.LOGGER_CATEGORY);
 
   private String[] getEnabledVersions() {
@@ -57,69 +75,69 @@ public class HTTPTerraSync extends Thread implements TileService {
     }
 
     private static final int MAXRETRY = 10;
-    private final CopyOnWriteArrayList<Syncable> syncList = new CopyOnWriteArrayList<>();
-    private boolean cancelFlag = false;
-
-    private List<WeightedUrl> urls = new ArrayList<>();
+    /** How often a download whose hash doesn't match the .dirindex is retried. */
+    private static final int MAX_DOWNLOAD_ATTEMPTS = 3;
+    /** The Syncables still to do, including the ones being worked on. */
+    private final SyncQueue syncList = new SyncQueue();
+    private volatile boolean cancelFlag = false;
+
+    /** The mirrors per root type. Filled lazily while syncing. */
+    private final Map<TerraSyncRootDirectoryType, List<WeightedUrl>> urls = new ConcurrentHashMap<>();
     SecureRandom rand = new SecureRandom();
 
-    private HttpURLConnection httpConn;
+    /** Talks to the mirrors. Aborted on cancel/quit. */
+    private volatile HttpTransport transport = new UrlConnectionTransport();
+
+    /** The Syncables currently being worked on by a tile worker. */
+    private final Set<Syncable> inFlight = ConcurrentHashMap.newKeySet();
+
+    /** Workers downloading the single files of a directory. Only valid during {@link #sync()}. */
+    private ExecutorService fileWorkers;
 
-    private boolean ageCheck;
+    private volatile boolean ageCheck;
 
-    private long maxAge;
+    private volatile long maxAge;
+
+    private volatile int syncThreads = DEFAULT_SYNC_THREADS;
 
     private final Object mutex = new Object();
 
-    private final HashMap<WeightedUrl, TileResult> downloadStats = new HashMap<>();
-    private final HashMap<WeightedUrl, TileResult> badUrls = new HashMap<>();
+    private final Map<WeightedUrl, TileResult> downloadStats = new ConcurrentHashMap<>();
+    /** The mirrors taken out of the rotation per root type, so each root only gets its own back. */
+    private final Map<TerraSyncRootDirectoryType, Map<WeightedUrl, TileResult>> badUrls = new ConcurrentHashMap<>();
     
-    private class DirIndexCacheKey {
-      private WeightedUrl url;
-      private String dir;
+    /** The .dirindex files checked with the mirror recently. */
+    private final DirIndexCache dirIndexCache = new DirIndexCache(TimeUnit.MINUTES.toMillis(DirIndexCache.DEFAULT_TTL_MINUTES),
+            DirIndexCache.DEFAULT_MEMORY_LIMIT);
 
-      public DirIndexCacheKey(WeightedUrl url, String dir) {
-        this.url = url;
-        this.dir = dir;
-      }
+    /** The local file hashes per scenery root. Loaded on first use, written after each sync. */
+    private final Map<Path, FileHashCache> hashCaches = new ConcurrentHashMap<>();
 
-    @Override
-    public int hashCode() {
-      int hash = 7;
-      hash = 37 * hash + Objects.hashCode(this.url);
-      hash = 37 * hash + Objects.hashCode(this.dir);
-      return hash;
-    }
+    /** The validators of the local .dirindex files per scenery root. */
+    private final Map<Path, DirIndexStore> dirIndexStores = new ConcurrentHashMap<>();
 
-    @Override
-    public boolean equals(Object obj) {
-      if (this == obj) {
-        return true;
-      }
-      if (obj == null) {
-        return false;
-      }
-      if (getClass() != obj.getClass()) {
-        return false;
-      }
-      final DirIndexCacheKey other = (DirIndexCacheKey) obj;
-      if (!Objects.equals(this.dir, other.dir)) {
-        return false;
-      }
-      return Objects.equals(this.url, other.url);
-    }
-      
+    private final TerraMaster terraMaster;
 
-            
-    }
-    
-    private final HashMap<DirIndexCacheKey, String[]> dirIndexCache = new HashMap<>();
+    private volatile boolean quitFlag;
 
-    private final TerraMaster terraMaster;
+    private final AtomicInteger retryCount = new AtomicInteger();
 
-    private boolean quitFlag;
+    /** Adds up the progress of the workers for the progress bar */
+    private final SyncProgress progress = new SyncProgress(this::showProgress);
+    /** Hides the progress bar a moment after the sync ended. Only used on the EDT. */
+    private Timer hideProgress;
 
-    private int retryCount;
+    /** One streaming buffer per worker thread. Allocated once instead of per file. */
+    private final ThreadLocal<ByteBuffer> downloadBuffer = ThreadLocal.withInitial(() -> ByteBuffer.allocate(DOWNLOAD_BUFFER_SIZE));
+
+    /** One SHA-1 digest per worker thread, used while streaming. */
+    private final ThreadLocal<MessageDigest> sha1Digest = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
 
     public HTTPTerraSync(TerraMaster terraMaster) {
         super("HTTPTerraSync");
@@ -134,11 +152,8 @@ public class HTTPTerraSync extends Thread implements TileService {
             if (syncable == null) {
                 continue;
             }
-            synchronized (syncList) {
-                syncList.add(syncable);
-                cancelFlag = false;
-                syncList.sort(Comparator.comparing(Syncable::getName));
-            }
+            syncList.add(syncable);
+            cancelFlag = false;
             log.log(Level.FINEST, "Added {0} to queue", syncable.getName());
         }
         wakeUp();
@@ -153,47 +168,46 @@ public class HTTPTerraSync extends Thread implements TileService {
 
     @Override
     public Collection<Syncable> getSyncList() {
-        return syncList;
+        return syncList.snapshot();
+    }
+
+    @Override
+    public void setSyncOrder(SyncOrder order) {
+        syncList.setOrder(order);
     }
 
     @Override
     public void quit() {
         quitFlag = true;
-        synchronized (syncList) {
-            syncList.clear();
-        }
+        syncList.clear();
         synchronized (mutex) {
             mutex.notifyAll();
         }
-        (new Thread(() -> {
-            try {
-                if (httpConn != null && httpConn.getInputStream() != null) {
-                    httpConn.getInputStream().close();
-                }
-            } catch (IOException e) {
-                log.log(Level.WARNING, "Error while shutting down HTTPTerraSync: ", e);
-            }
-        })).start();
+        (new Thread(this::closeConnections)).start();
     }
 
     @Override
     public void cancel() {
         cancelFlag = true;
-        synchronized (syncList) {
-            syncList.clear();
-        }
-        (new Thread("Http Cancel Thread") {
-            @Override
-            public void run() {
-                try {
-                    if (httpConn != null && httpConn.getInputStream() != null) {
-                        httpConn.getInputStream().close();
-                    }
-                } catch (IOException e) {
-                    // Expecting to throw error
-                }
-            }
-        }).start();
+        syncList.clear();
+        (new Thread(this::closeConnections, "Http Cancel Thread")).start();
+        wakeUp();
+    }
+
+    /**
+     * Aborts all running downloads. The workers see the closed streams as errors and
+     * check the cancel/quit flag afterwards.
+     */
+    private void closeConnections() {
+        transport.abort();
+    }
+
+    /**
+     * Replaces the way files are fetched from the mirrors. The default uses HttpURLConnection
+     * and leaves the reuse of connections to the keep-alive cache of the JRE.
+     */
+    public void setTransport(HttpTransport transport) {
+        this.transport = transport;
     }
 
     @Override
@@ -205,9 +219,7 @@ public class HTTPTerraSync extends Thread implements TileService {
             }
             d.delete();
 
-            synchronized (syncList) {
-                syncList.remove(n);
-            }
+            syncList.remove(n);
         }
     }
 
@@ -233,32 +245,72 @@ public class HTTPTerraSync extends Thread implements TileService {
         }
     }
 
+    /**
+     * Drains the syncList. The most important {@link Syncable} is handed to the next free of
+     * {@link #syncThreads} tile workers, the files inside the directories fan out over the same
+     * number of file workers.
+     */
     private void sync() {
         int tilesize = 10000;
         // update progressbar
-        invokeLater(UPDATETYPE.START, 0); // update
-        invokeLater(UPDATETYPE.EXTEND, syncList.size() * tilesize + AIRPORT_MAX); // update
+        reportProgress(UPDATETYPE.START, syncList.size() * 2); // update
+        reportProgress(UPDATETYPE.EXTEND, syncList.size() * tilesize + AIRPORT_MAX); // update
         downloadStats.clear();
         badUrls.clear();
-        while (!syncList.isEmpty()) {
-            String[] versions = getEnabledVersions();
-            final Syncable syncable;
-            synchronized (syncList) {
-                if (syncList.isEmpty()) {
-                    continue;
+        urls.clear();
+        ExecutorService tileWorkers = newWorkerPool("HTTPTerraSync-Tile", syncThreads);
+        fileWorkers = newWorkerPool("HTTPTerraSync-File", syncThreads);
+        try {
+            while (!syncList.isEmpty() && !quitFlag) {
+                SyncQueue.Entry next;
+                while (inFlight.size() < syncThreads && (next = syncList.firstEntry(inFlight::contains)) != null) {
+                    final SyncQueue.Entry entry = next;
+                    inFlight.add(entry.getSyncable());
+                    tileWorkers.submit(() -> syncSyncable(entry));
+                }
+                synchronized (mutex) {
+                    if (!syncList.isEmpty()) {
+                        // until a worker is done or something new is queued
+                        mutex.wait(500);
+                    }
                 }
-                syncable = syncList.get(0);
             }
-            for (String version : versions) {
+            tileWorkers.shutdown();
+            tileWorkers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            tileWorkers.shutdownNow();
+        } finally {
+            fileWorkers.shutdownNow();
+            saveCaches();
+        }
+        HashMap<WeightedUrl, TileResult> completeStats = new HashMap<>();
+        completeStats.putAll(downloadStats);
+        for (Map<WeightedUrl, TileResult> rootBadUrls : badUrls.values()) {
+            completeStats.putAll(rootBadUrls);
+        }
+
+        terraMaster.showStats(completeStats);
+        // syncList is now empty
+        reportProgress(UPDATETYPE.RESET, 0); // reset progressBar
+    }
+
+    /**
+     * Syncs all enabled root types of one {@link Syncable}. Runs on a tile worker. If it was
+     * queued again meanwhile it stays in the queue for another round.
+     */
+    private void syncSyncable(SyncQueue.Entry entry) {
+        Syncable syncable = entry.getSyncable();
+        try {
+            for (String version : getEnabledVersions()) {
                 TerraSyncRootDirectoryType rootType = TerraSyncRootDirectoryType.valueOf(version);
-                final List<WeightedUrl> newUrls = getUrl(rootType);
-                if (newUrls != urls) {
-                    urls = newUrls;
-                    urls.forEach(element -> downloadStats.put(element, new TileResult(element)));
-                }                
-                
+                getUrls(rootType);
+
                 TerraSyncDirectoryType[] types = syncable.getTypes(rootType);
                 for (TerraSyncDirectoryType terraSyncDirectoryType : types) {
+                    if (cancelFlag || quitFlag) {
+                        return;
+                    }
                     int updates = 0;
                     if (terraSyncDirectoryType.isInRoot(rootType)) {
                       final String basePath;
@@ -270,169 +322,362 @@ public class HTTPTerraSync extends Thread implements TileService {
                       } else {
                         basePath = syncable.basePath();
                       }
+                      getHashCache(basePath);
                       updates = syncDirectory(terraSyncDirectoryType.getDirname() + "/" + syncable.buildPath(), basePath, false, terraSyncDirectoryType, rootType);
                     }
-                    invokeLater(UPDATETYPE.UPDATE, DIR_SIZE - updates); // update progressBar
+                    reportProgress(UPDATETYPE.UPDATE, DIR_SIZE - updates); // update progressBar
                 }
             }
-
-            synchronized (syncList) {
-                syncList.remove(syncable);
+        } catch (Exception e) {
+            log.log(Level.WARNING, "Error syncing " + syncable.getName(), e);
+        } finally {
+            syncList.remove(entry);
+            inFlight.remove(syncable);
+            wakeUp();
+            if (syncable instanceof TileName) {
+                // no longer in the sync list
+                tileChanged((TileName) syncable);
             }
         }
-        HashMap<WeightedUrl, TileResult> completeStats = new HashMap<>();
-        completeStats.putAll(downloadStats);
-        completeStats.putAll(badUrls);
+    }
 
-        terraMaster.showStats(completeStats);
-        // syncList is now empty
-        invokeLater(UPDATETYPE.RESET, 0); // reset progressBar
+    private static ExecutorService newWorkerPool(String name, int threads) {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Waits for all the given downloads. The first {@link IOException} is rethrown after all
+     * finished, so the caller can mark the mirror bad as in the sequential case.
+     */
+    private int joinAll(List<Future<Integer>> futures) throws IOException {
+        int updates = 0;
+        IOException first = null;
+        for (Future<Integer> future : futures) {
+            try {
+                updates += future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return updates;
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    if (first == null) {
+                        first = (IOException) e.getCause();
+                    }
+                } else {
+                    log.log(Level.WARNING, "Error in file worker", e.getCause());
+                }
+            }
+        }
+        if (first != null) {
+            throw first;
+        }
+        return updates;
     }
 
   private List<WeightedUrl> getUrl(TerraSyncRootDirectoryType dirType) {
     WeightedUrl url = new WeightedUrl("100", terraMaster.getProps().getProperty(dirType + "." + TerraMasterProperties.URL));
-    return Arrays.asList(url);
+    downloadStats.putIfAbsent(url, new TileResult(url));
+    return new CopyOnWriteArrayList<>(Arrays.asList(url));
   }
 
+    private List<WeightedUrl> getUrls(TerraSyncRootDirectoryType rootType) {
+        return urls.computeIfAbsent(rootType, this::getUrl);
+    }
+
     /**
      * Get a weighted random URL
+     *
+     * @throws NoMirrorException if all mirrors of the root type are bad and the retries are used up
      */
-    private WeightedUrl getBaseUrl() {
-        if (urls.isEmpty()) {
+    private WeightedUrl getBaseUrl(TerraSyncRootDirectoryType rootType) throws NoMirrorException {
+        List<WeightedUrl> rootUrls = getUrls(rootType);
+        // the workers remove bad mirrors concurrently, so work on one snapshot
+        WeightedUrl[] snapshot = rootUrls.toArray(new WeightedUrl[0]);
+        if (snapshot.length == 0) {
             log.warning("No URLs to sync with, retrying.");
-            if (retryCount++ < MAXRETRY) {
-                resetUrls();
+            if (retryCount.getAndIncrement() < MAXRETRY) {
+                resetUrls(rootType, rootUrls);
+                snapshot = rootUrls.toArray(new WeightedUrl[0]);
+            }
+            if (snapshot.length == 0) {
+                throw new NoMirrorException(rootType);
             }
         }
 
         // Compute the total weight of all items together
         double totalWeight = 0.0d;
-        for (WeightedUrl i : urls) {
+        for (WeightedUrl i : snapshot) {
             totalWeight += i.getWeight();
         }
-        // Now choose a random item
-        int randomIndex = -1;
-
+        // Now choose a random item, the last one if rounding leaves a rest
         double random = rand.nextDouble() * totalWeight;
-        for (int i = 0; i < urls.size(); ++i) {
-            random -= urls.get(i).getWeight();
+        for (WeightedUrl i : snapshot) {
+            random -= i.getWeight();
             if (random <= 0.0d) {
-                randomIndex = i;
-                break;
+                return i;
             }
         }
-        return urls.get(randomIndex);
+        return snapshot[snapshot.length - 1];
     }
 
-    private void resetUrls() {
-        urls.addAll(badUrls.keySet());
+    /**
+     * Gives the root type its own bad mirrors back.
+     */
+    private void resetUrls(TerraSyncRootDirectoryType rootType, List<WeightedUrl> rootUrls) {
+        Map<WeightedUrl, TileResult> rootBadUrls = badUrls.get(rootType);
+        if (rootBadUrls != null) {
+            for (WeightedUrl url : rootBadUrls.keySet()) {
+                if (!rootUrls.contains(url)) {
+                    rootUrls.add(url);
+                }
+            }
+        }
     }
 
     /**
-     * Downloads a File into a byte[]
-     *
-     * @return byte[] of the file or empty byte[]
+     * Thrown when there is no mirror left to sync a root type with.
      */
-    private byte[] downloadFile(WeightedUrl baseUrl, String file) throws IOException {
-        long start = System.currentTimeMillis();
+    private static class NoMirrorException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        NoMirrorException(TerraSyncRootDirectoryType rootType) {
+            super("No mirror left to sync " + rootType + " with");
+        }
+    }
+
+    /**
+     * Requests the given file from the mirror. The response has to be released with
+     * {@link #release(HttpTransport.Response)} so the connection can be reused.
+     */
+    private HttpTransport.Response openConnection(WeightedUrl baseUrl, String file) throws IOException {
+        return openConnection(baseUrl, file, Collections.emptyMap());
+    }
+
+    private HttpTransport.Response openConnection(WeightedUrl baseUrl, String file, Map<String, String> headers)
+            throws IOException {
         URL url = new URL(baseUrl.getUrl().toExternalForm() + (file.startsWith("/")?file:("/"+file)));
 
         log.finest(() -> "Downloading : " + url.toExternalForm());
-        httpConn = (HttpURLConnection) url.openConnection();
-        httpConn.setConnectTimeout(10000);
-        httpConn.setReadTimeout(20000);
-        int responseCode = (httpConn).getResponseCode();
-
-        if (responseCode == HttpURLConnection.HTTP_OK) {
-            final String fileName;
-            String disposition = httpConn.getHeaderField("Content-Disposition");
-            String contentType = httpConn.getContentType();
-            int contentLength = httpConn.getContentLength();
-
-            if (disposition != null) {
-                // extracts file name from header field
-                int index = disposition.indexOf("filename=");
-                if (index > 0) {
-                    fileName = disposition.substring(index + 10, disposition.length() - 1);
+        HttpTransport.Response httpConn = transport.get(url, headers);
+        downloadStats.get(baseUrl).addRequest();
+        return httpConn;
+    }
+
+    private void release(HttpTransport.Response httpConn) {
+        httpConn.close();
+    }
+
+    /**
+     * Downloads the .dirindex of the directory and stores it locally. If the validators of the
+     * local copy are known the request is conditional and a 304 just revalidates the copy.
+     * Everything else is streamed to disk by {@link #downloadFile(WeightedUrl, String, Path, String)}.
+     *
+     * @return the .dirindex or an empty String
+     */
+    private String downloadDirIndex(WeightedUrl baseUrl, String localBaseDir, String path) throws IOException {
+        long start = System.currentTimeMillis();
+        String dir = path.replace("\\", "/");
+        File localFile = new File(new File(localBaseDir, path), DIRINDEX_FILENAME);
+        DirIndexStore store = getDirIndexStore(localBaseDir);
+        DirIndexStore.Entry validators = localFile.exists() ? store.get(dir, localFile.length()) : null;
+        HttpTransport.Response httpConn = openConnection(baseUrl, dir + "/" + DIRINDEX_FILENAME,
+                validators != null ? validators.conditionalHeaders() : Collections.emptyMap());
+        URL url = httpConn.getURL();
+        try {
+            int responseCode = httpConn.getResponseCode();
+
+            if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && validators != null) {
+                // restarts the age check
+                localFile.setLastModified(System.currentTimeMillis());
+                store.put(dir, new DirIndexStore.Entry(validators.etag, validators.lastModified, validators.size,
+                        System.currentTimeMillis()));
+                downloadStats.get(baseUrl).addEqual();
+                log.finest(() -> "Not modified " + url.toExternalForm());
+                return new String(readFile(localFile));
+            } else if (responseCode == HttpURLConnection.HTTP_OK) {
+                final String fileName;
+                String disposition = httpConn.getHeader("Content-Disposition");
+                String contentType = httpConn.getHeader("Content-Type");
+                String contentLength = httpConn.getHeader("Content-Length");
+
+                if (disposition != null) {
+                    // extracts file name from header field
+                    int index = disposition.indexOf("filename=");
+                    if (index > 0) {
+                        fileName = disposition.substring(index + 10, disposition.length() - 1);
+                    } else {
+                        fileName = "";
+                    }
                 } else {
-                    fileName = "";
+                    fileName = url.getFile();
                 }
-            } else {
-                fileName = url.getFile();
-            }
 
-            log.finest(() -> "Content-Type = " + contentType);
-            log.finest(() -> "Content-Disposition = " + disposition);
-            log.finest(() -> "Content-Length = " + contentLength);
-            log.finest(() -> "fileName = " + fileName);
+                log.finest(() -> "Content-Type = " + contentType);
+                log.finest(() -> "Content-Disposition = " + disposition);
+                log.finest(() -> "Content-Length = " + contentLength);
+                log.finest(() -> "fileName = " + fileName);
 
-            // opens input stream from the HTTP connection
-            InputStream inputStream = httpConn.getInputStream();
+                // opens input stream from the HTTP connection
+                InputStream inputStream = httpConn.getInputStream();
 
-            // opens an output stream to save into file
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                // opens an output stream to save into file
+                ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
 
-            int bytesRead;
-            byte[] buffer = new byte[1024];
-            while ((bytesRead = inputStream.read(buffer)) != -1) {
-                outputStream.write(buffer, 0, bytesRead);
+                int bytesRead;
+                byte[] buffer = new byte[1024];
+                while ((bytesRead = inputStream.read(buffer)) != -1) {
+                    outputStream.write(buffer, 0, bytesRead);
+                }
+
+                outputStream.close();
+                inputStream.close();
+
+                log.fine("File downloaded");
+                downloadStats.get(baseUrl).addDownload(outputStream.size(), System.currentTimeMillis() - start);
+                String remoteDirIndex = new String(outputStream.toByteArray());
+                if (!remoteDirIndex.isEmpty()) {
+                    storeDirIndex(path, localBaseDir, remoteDirIndex);
+                    store.put(dir, new DirIndexStore.Entry(httpConn.getHeader("ETag"), httpConn.getHeader("Last-Modified"),
+                            localFile.length(), System.currentTimeMillis()));
+                }
+                return remoteDirIndex;
+            } else {
+                downloadStats.get(baseUrl).addError();
+                log.warning(
+                        () -> "No file to download. Server replied HTTP code: " + responseCode + " for " + url.toExternalForm());
             }
+            return "";
+        } finally {
+            release(httpConn);
+        }
+    }
 
-            outputStream.close();
-            inputStream.close();
+    /**
+     * Streams a file from the mirror to disk. The data is written to a temporary file in the
+     * target directory which is moved over the target once complete, so an interrupted
+     * download never leaves a truncated file behind. Memory use is one buffer per worker
+     * whatever the size of the file.
+     * The SHA-1 is calculated from the bytes while they pass and checked against the hash
+     * from the .dirindex before the file is moved into place. A corrupt download is thrown
+     * away and fetched again up to {@link #MAX_DOWNLOAD_ATTEMPTS} times.
+     *
+     * @param sha1 the expected hash in hex. null or empty to skip the check.
+     * @return the number of bytes written or -1 if the server didn't deliver a valid file
+     */
+    private long downloadFile(WeightedUrl baseUrl, String file, Path target, String sha1) throws IOException {
+        for (int attempt = 1; attempt <= MAX_DOWNLOAD_ATTEMPTS; attempt++) {
+            long start = System.currentTimeMillis();
+            HttpTransport.Response httpConn = openConnection(baseUrl, file);
+            try {
+                int responseCode = httpConn.getResponseCode();
+                if (responseCode != HttpURLConnection.HTTP_OK) {
+                    downloadStats.get(baseUrl).addError();
+                    log.warning(() -> "No file to download. Server replied HTTP code: " + responseCode + " for "
+                            + httpConn.getURL().toExternalForm());
+                    return -1;
+                }
+                Files.createDirectories(target.getParent());
+                Path tmp = Files.createTempFile(target.getParent(), "." + target.getFileName(), ".part");
+                try {
+                    MessageDigest digest = sha1Digest.get();
+                    digest.reset();
+                    long size = streamToFile(httpConn.getInputStream(), tmp, digest);
+                    byte[] hashBytes = digest.digest();
+                    String hash = bytesToHex(hashBytes);
+                    if (sha1 == null || sha1.isEmpty() || sha1.equalsIgnoreCase(hash)) {
+                        BinaryFiles.atomicMove(tmp, target);
+                        recordHash(target, hashBytes);
+                        log.fine("File downloaded");
+                        downloadStats.get(baseUrl).addDownload(size, System.currentTimeMillis() - start);
+                        return size;
+                    }
+                    downloadStats.get(baseUrl).addCorrupt();
+                    final int failed = attempt;
+                    log.warning(() -> "Hash mismatch for " + httpConn.getURL().toExternalForm() + " expected " + sha1
+                            + " got " + hash + " (attempt " + failed + ")");
+                } finally {
+                    Files.deleteIfExists(tmp);
+                }
+            } finally {
+                release(httpConn);
+            }
+            if (cancelFlag || quitFlag) {
+                break;
+            }
+        }
+        return -1;
+    }
 
-            log.fine("File downloaded");
-            downloadStats.get(baseUrl).actualDownloads += 1;
-            downloadStats.get(baseUrl).numberBytes += outputStream.size();
-            downloadStats.get(baseUrl).time += System.currentTimeMillis() - start;
-            return outputStream.toByteArray();
-        } else {
-            downloadStats.get(baseUrl).errors += 1;
-            log.warning(
-                    () -> "No file to download. Server replied HTTP code: " + responseCode + " for " + url.toExternalForm());
+    /**
+     * Copies the stream into the file while feeding the digest.
+     *
+     * @return the number of bytes copied
+     */
+    private long streamToFile(InputStream inputStream, Path file, MessageDigest digest) throws IOException {
+        long size = 0;
+        ByteBuffer buffer = downloadBuffer.get();
+        try (InputStream in = inputStream;
+                FileChannel out = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            int bytesRead;
+            while ((bytesRead = in.read(buffer.array(), 0, buffer.capacity())) != -1) {
+                digest.update(buffer.array(), 0, bytesRead);
+                buffer.limit(bytesRead);
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                buffer.clear();
+                size += bytesRead;
+            }
         }
-        httpConn.disconnect();
-        return "".getBytes();
+        return size;
     }
 
     /**
      * Syncs the given directory.
      */
     private int syncDirectory(String path, String localBaseDir, boolean force, TerraSyncDirectoryType type, TerraSyncRootDirectoryType rootType) {
-        while (!urls.isEmpty()) {
+        while (!getUrls(rootType).isEmpty()) {
 
-            WeightedUrl baseUrl = getBaseUrl();
+            WeightedUrl baseUrl;
+            try {
+                baseUrl = getBaseUrl(rootType);
+            } catch (NoMirrorException e) {
+                log.log(Level.WARNING, () -> e.getMessage() + ", skipping " + path);
+                return 0;
+            }
             try {
                 int updates = 0;
                 if (cancelFlag) {
                     return updates;
                 }
-              final String[] parentRemoteDirIndex = getRemoteDirIndex(baseUrl, localBaseDir, getParent(path));
+              final DirIndex parentRemoteDirIndex = getRemoteDirIndex(baseUrl, localBaseDir, getParent(path));
               
-                HashMap<String, String> parentTypeLookup = buildTypeLookup(parentRemoteDirIndex);
-                HashMap<String, String> parentFileLookup = buildFileLookup(parentRemoteDirIndex);
-                HashMap<String, String> parentHashLookup = buildHashLookup(parentRemoteDirIndex);
                 String[] parts = path.replace("\\", "/").replace("//", "/").split("/");
                 String tileName = parts[parts.length - 1];
-                String pathType = parentTypeLookup.get(tileName);
-                if (pathType==null||pathType.isEmpty()) {
+                DirIndex.Entry entry = parentRemoteDirIndex.getByBaseName(tileName);
+                if (entry == null) {
                   log.log(Level.WARNING, () -> "Couldn't process " + path + " type empty");
                   return updates;
                 }
                 
 
-              switch (pathType) {
-                case "t":
-                  updates += processTar(path + ".txz", localBaseDir, force, type);
+              switch (entry.getType()) {
+                case TARBALL:
+                  updates += processTar(path + ".txz", localBaseDir, force, type, rootType);
                   break;
-                case "d":
+                case DIRECTORY:
                   updates += processDir(path, localBaseDir, force, type, rootType);
                   break;
-                case "f":                  
-                  updates+= processFile(localBaseDir, getParent(path), parentFileLookup.get(tileName), parentHashLookup.get(tileName));
+                case FILE:
+                  updates+= processFile(localBaseDir, getParent(path), entry.getName(), entry.getHashHex(), rootType);
                   break;
                 default:
-                  log.log(Level.WARNING, () -> "Couldn't process " + path + " with type " + pathType);
+                  log.log(Level.WARNING, () -> "Couldn't process " + path + " with type " + entry.getType());
                   break;
               }
 
@@ -447,16 +692,16 @@ public class HTTPTerraSync extends Thread implements TileService {
                         "Sync can fail if Java older than 8u101 and 7u111 with https hosts.\r\n"
                         + baseUrl.getUrl().toExternalForm(),
                         "SSL Error", JOptionPane.ERROR_MESSAGE);
-                markBad(baseUrl, e);
+                markBad(rootType, baseUrl, e);
             } catch (SocketException e) {
                 log.log(Level.WARNING, "Connect Error " + e + " syncing with " + baseUrl.getUrl().toExternalForm()
                         + path.replace("\\", "/") + " removing URL", e);
-                markBad(baseUrl, e);
+                markBad(rootType, baseUrl, e);
                 return 0;
             } catch (UnknownHostException e) {
                 log.log(Level.WARNING, "Unknown Host Error " + e + " syncing with "
                         + baseUrl.getUrl().toExternalForm() + path.replace("\\", "/") + " removing URL. Connected?", e);
-                markBad(baseUrl, e);
+                markBad(rootType, baseUrl, e);
                 return 0;
             } catch (Exception e) {
                 log.log(Level.WARNING, "General Error " + e + " syncing with " + baseUrl.getUrl().toExternalForm()
@@ -468,126 +713,268 @@ public class HTTPTerraSync extends Thread implements TileService {
         return 0;
     }
 
-    private int processTar(String pathString, String localBaseDir, boolean force, TerraSyncDirectoryType type) throws IOException {
+    private int processTar(String pathString, String localBaseDir, boolean force, TerraSyncDirectoryType type, TerraSyncRootDirectoryType rootType) throws IOException {
         Path path = Paths.get(pathString);
         String fileName = path.getFileName().toString();
-        String[] remoteDirIndex = getRemoteDirIndex(getBaseUrl(), localBaseDir, path.getParent().toString());
-        String remoteHash = "";
-        for (String line : remoteDirIndex) {
-            String[] splitLine = line.split(":");
-            if (splitLine[1].equals(fileName)) {
-                remoteHash = splitLine[2];
-            }
-        }
+        DirIndex remoteDirIndex = getRemoteDirIndex(getBaseUrl(rootType), localBaseDir, path.getParent().toString());
+        DirIndex.Entry remoteEntry = remoteDirIndex.get(fileName);
+        String remoteHash = remoteEntry != null ? remoteEntry.getHashHex() : "";
 
         boolean load = true;
         File localFile = new File(localBaseDir + File.separator + pathString);
         if (localFile.exists()) {
             log.log(Level.FINEST, "Localfile : {0}", localFile.getAbsolutePath());
-            byte[] localHashBytes;
+            String localHash;
             try {
-                localHashBytes = calcSHA1(localFile);
+                localHash = localHash(localBaseDir, localFile);
             } catch (NoSuchAlgorithmException e) {
                 log.log(Level.WARNING, "Error while checking local txz file hash:", e);
-                localHashBytes = new byte[0];
+                localHash = "";
             }
-            String localHash = bytesToHex(localHashBytes);
             load = !remoteHash.equals(localHash);
         }
 
         if (load || force) {
-            byte[] bs = downloadFile(getBaseUrl(), pathString);
-            try {
-                if (!Files.exists(localFile.getParentFile().toPath())) {
-                  Files.createDirectories(localFile.getParentFile().toPath());
-                }
-                Files.copy(new ByteArrayInputStream(bs), localFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-            } catch (IOException e) {
-                log.log(Level.WARNING, "Error while copying txz:", e);
-            }
+            return Math.max(0, downloadTar(getBaseUrl(rootType), pathString, localFile.toPath(), remoteHash));
         } else {
             log.log(Level.INFO, "Not downloading {0} because file hashes match", pathString);
             return 0;
         }
+    }
 
-        int updates = 0;
-        // Extract txz file
-        try (TarInputStream tar = new TarInputStream(new XZInputStream(Files.newInputStream(localFile.toPath())))) {
-            TarEntry entry;
-            while ((entry = tar.getNextEntry()) != null) {
-                Path extractTo = localFile.toPath().getParent().resolve(entry.getName());
-                if (entry.isDirectory()) {
-                    Files.createDirectories(extractTo);
-                } else {
-                    Files.copy(tar, extractTo, StandardCopyOption.REPLACE_EXISTING);
-                    updates++;
+    /**
+     * Downloads and extracts a .txz in one pass. The compressed bytes are hashed and written
+     * to a copy of the archive (needed for the hash check of the next sync) while they are
+     * decompressed and untarred, so nothing is read back from disk.
+     * The extracted files are staged next to their targets and only moved into place after
+     * the hash of the archive matched the .dirindex. Otherwise everything is thrown away and
+     * the archive is fetched again up to {@link #MAX_DOWNLOAD_ATTEMPTS} times.
+     *
+     * @param sha1 the expected hash of the archive in hex. null or empty to skip the check.
+     * @return the number of extracted files or -1 if the server didn't deliver a valid archive
+     */
+    private int downloadTar(WeightedUrl baseUrl, String file, Path archive, String sha1) throws IOException {
+        Path dir = archive.getParent();
+        for (int attempt = 1; attempt <= MAX_DOWNLOAD_ATTEMPTS; attempt++) {
+            long start = System.currentTimeMillis();
+            HttpTransport.Response httpConn = openConnection(baseUrl, file);
+            // tmp -> target of everything waiting for the hash check
+            Map<Path, Path> staged = new LinkedHashMap<>();
+            try {
+                int responseCode = httpConn.getResponseCode();
+                if (responseCode != HttpURLConnection.HTTP_OK) {
+                    downloadStats.get(baseUrl).addError();
+                    log.warning(() -> "No file to download. Server replied HTTP code: " + responseCode + " for "
+                            + httpConn.getURL().toExternalForm());
+                    return -1;
+                }
+                Files.createDirectories(dir);
+                Path archiveTmp = Files.createTempFile(dir, "." + archive.getFileName(), ".part");
+                staged.put(archiveTmp, archive);
+                MessageDigest digest = sha1Digest.get();
+                digest.reset();
+                int updates = 0;
+                boolean complete = false;
+                long size;
+                try (FileChannel archiveOut = FileChannel.open(archiveTmp, StandardOpenOption.WRITE);
+                        TeeInputStream in = new TeeInputStream(httpConn.getInputStream(), archiveOut, digest)) {
+                    try {
+                        updates = extractTar(new BufferedInputStream(in, DOWNLOAD_BUFFER_SIZE), dir, staged);
+                        // the xz index and padding after the tar are part of the hash
+                        in.drain();
+                        complete = true;
+                    } catch (XZIOException e) {
+                        log.log(Level.WARNING, "Error while untarring " + file + ":", e);
+                    }
+                    size = in.getCount();
+                }
+                byte[] hashBytes = digest.digest();
+                String hash = bytesToHex(hashBytes);
+                if (complete && (sha1 == null || sha1.isEmpty() || sha1.equalsIgnoreCase(hash))) {
+                    for (Map.Entry<Path, Path> e : staged.entrySet()) {
+                        BinaryFiles.atomicMove(e.getKey(), e.getValue());
+                    }
+                    recordHash(archive, hashBytes);
+                    staged.clear();
+                    log.fine("File downloaded");
+                    downloadStats.get(baseUrl).addDownload(size, System.currentTimeMillis() - start);
+                    return updates;
                 }
+                downloadStats.get(baseUrl).addCorrupt();
+                final int failed = attempt;
+                log.warning(() -> "Hash mismatch for " + httpConn.getURL().toExternalForm() + " expected " + sha1
+                        + " got " + hash + " (attempt " + failed + ")");
+            } finally {
+                for (Path tmp : staged.keySet()) {
+                    Files.deleteIfExists(tmp);
+                }
+                release(httpConn);
+            }
+            if (cancelFlag || quitFlag) {
+                break;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Untars the xz compressed stream into temporary files next to their targets.
+     *
+     * @param staged receives tmp -> target for every extracted file
+     * @return the number of extracted files
+     */
+    private int extractTar(InputStream compressed, Path dir, Map<Path, Path> staged) throws IOException {
+        int updates = 0;
+        TarInputStream tar = new TarInputStream(new XZInputStream(compressed));
+        TarEntry entry;
+        while ((entry = tar.getNextEntry()) != null) {
+            Path extractTo = dir.resolve(entry.getName()).normalize();
+            if (!extractTo.startsWith(dir)) {
+                throw new IOException("Illegal entry " + entry.getName());
+            }
+            if (entry.isDirectory()) {
+                Files.createDirectories(extractTo);
+            } else {
+                Files.createDirectories(extractTo.getParent());
+                Path tmp = Files.createTempFile(extractTo.getParent(), "." + extractTo.getFileName(), ".part");
+                staged.put(tmp, extractTo);
+                Files.copy(tar, tmp, StandardCopyOption.REPLACE_EXISTING);
+                updates++;
             }
-        } catch (Exception e) {
-            log.log(Level.WARNING, "Error while untarring " + pathString + ":", e);
-            e.printStackTrace();
         }
         return updates;
     }
 
+    /**
+     * Passes every byte read on to a copy on disk and a digest.
+     */
+    private static class TeeInputStream extends FilterInputStream {
+        private final FileChannel copy;
+        private final MessageDigest digest;
+        private long count;
+
+        TeeInputStream(InputStream in, FileChannel copy, MessageDigest digest) {
+            super(in);
+            this.copy = copy;
+            this.digest = digest;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                tee(new byte[]{(byte) b}, 0, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                tee(b, off, n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // skipped bytes have to be hashed too
+            byte[] buffer = new byte[(int) Math.min(n, 8192)];
+            return Math.max(0, read(buffer, 0, buffer.length));
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        /** Reads up to the end of the stream. */
+        void drain() throws IOException {
+            byte[] buffer = new byte[8192];
+            while (read(buffer, 0, buffer.length) != -1) {
+                // just tee
+            }
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        private void tee(byte[] b, int off, int len) throws IOException {
+            digest.update(b, off, len);
+            ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+            while (buffer.hasRemaining()) {
+                copy.write(buffer);
+            }
+            count += len;
+        }
+    }
+
     private int processDir(String path, String localBaseDir, boolean force, TerraSyncDirectoryType type, TerraSyncRootDirectoryType rootType)
             throws IOException, NoSuchAlgorithmException {
         int updates = 0;
-        String localDirIndex = readLocalDirIndex(path, localBaseDir);
-        String[] localLines = localDirIndex.split("\r?\n");
+        DirIndex localDirIndex = DirIndex.parse(readLocalDirIndex(path, localBaseDir));
         if (!force && ageCheck && getDirIndexAge(path, localBaseDir) < maxAge) {
-            return localLines.length;
+            return localDirIndex.getEntries().size();
         }
-        String[] lines = getRemoteDirIndex(getBaseUrl(), localBaseDir, path);
-        HashMap<String, String> lookup = buildLookup(localLines);
-        for (String line : lines) {
+        DirIndex remoteDirIndex = getRemoteDirIndex(getBaseUrl(rootType), localBaseDir, path);
+        List<Future<Integer>> files = new ArrayList<>();
+        for (DirIndex.Entry entry : remoteDirIndex.getEntries()) {
             if (cancelFlag) {
-                return updates;
+                return updates + joinAll(files);
             }
-            String[] splitLine = line.split(":");
-            if (line.startsWith("d:")) {
+            switch (entry.getType()) {
+            case DIRECTORY:
                 // We've got a directory if force ignore what we know
                 // otherwise check the SHA against
                 // the one from the server
-                String dirname = path + "/" + splitLine[1];
+                String dirname = path + "/" + entry.getName();
                 dirname = dirname.replace("\\", "/").replace("//", "/");
-                if (force || !(new File(dirname).exists()) || !splitLine[2].equals(lookup.get(splitLine[1]))) {
+                DirIndex.Entry local = localDirIndex.get(entry.getName());
+                if (force || !(new File(localBaseDir, dirname).exists()) || local == null
+                        || !Arrays.equals(entry.getHash(), local.getHash())) {
                     updates += syncDirectory(dirname, localBaseDir, force, type, rootType);
                 }
-            } else if (line.startsWith("f:")) {
-                updates+= processFile(localBaseDir, path, splitLine[1], splitLine[2]);
-            } else if (line.startsWith("t:")) {
-                updates += processTar(path + splitLine[1], localBaseDir, force, type);
+                break;
+            case FILE:
+                // the files of a directory are independent, let the file workers fetch them
+                files.add(fileWorkers.submit(() -> processFile(localBaseDir, path, entry.getName(), entry.getHashHex(), rootType)));
+                break;
+            case TARBALL:
+                updates += processTar(path + entry.getName(), localBaseDir, force, type, rootType);
+                break;
             }
-            log.finest(line);
+            log.finest(() -> entry.getType().getCode() + ":" + entry.getName());
         }
-        return updates;
+        return updates + joinAll(files);
     }
 
-  public int processFile(String localBaseDir, String path, String fileName, String localSHA1) throws IOException, NoSuchAlgorithmException {
+  public int processFile(String localBaseDir, String path, String fileName, String localSHA1, TerraSyncRootDirectoryType rootType) throws IOException, NoSuchAlgorithmException {
+    if (cancelFlag || quitFlag) {
+      return 0;
+    }
     // We've got a file
     File localFile = new File(localBaseDir, path + File.separator + fileName);
     log.finest(localFile.getAbsolutePath());
     boolean load = true;
     if (localFile.exists()) {
       log.log(Level.FINEST, "Localfile : {0}", localFile.getAbsolutePath());
-      byte[] b = calcSHA1(localFile);
-      String bytesToHex = bytesToHex(b);
       // Changed
-      load = !localSHA1.equals(bytesToHex);
+      load = !localSHA1.equals(localHash(localBaseDir, localFile));
     } else {
       // New
       if (!localFile.getParentFile().exists()) {
         localFile.getParentFile().mkdirs();
       }
     }
-    WeightedUrl filebaseUrl = getBaseUrl();
+    WeightedUrl filebaseUrl = getBaseUrl(rootType);
     if (load) {
-      downloadFile(path, getBaseUrl(), fileName, localFile, filebaseUrl);
+      downloadFile(path, filebaseUrl, fileName, localFile, filebaseUrl, localSHA1, rootType);
     } else {
-      downloadStats.get(filebaseUrl).equal += 0;
+      downloadStats.get(filebaseUrl).addEqual();
     }
-    invokeLater(UPDATETYPE.UPDATE, 1);
+    reportProgress(UPDATETYPE.UPDATE, 1);
     return 1;
   }
 
@@ -601,101 +988,66 @@ public class HTTPTerraSync extends Thread implements TileService {
         return "";
     }
 
-    private HashMap<String, String> buildLookup(String[] localLines) {
-        HashMap<String, String> lookup = new HashMap<>();
-        for (String line : localLines) {
-            String[] splitLine = line.split(":");
-            if (splitLine.length > 2) {
-                lookup.put(splitLine[1], splitLine[2]);
-            }
-        }
-        return lookup;
-    }
-
-    private HashMap<String, String> buildTypeLookup(String[] localLines) {
-        HashMap<String, String> lookup = new HashMap<>();
-        for (String line : localLines) {
-            String[] splitLine = line.split(":");
-            if (splitLine.length > 2) {
-                lookup.put(splitLine[1].split("\\.")[0], splitLine[0]);
-            }
-        }
-        return lookup;
-    }
-
-    private HashMap<String, String> buildFileLookup(String[] localLines) {
-        HashMap<String, String> lookup = new HashMap<>();
-        for (String line : localLines) {
-            String[] splitLine = line.split(":");
-            if (splitLine.length > 2) {
-                lookup.put(splitLine[1].split("\\.")[0], splitLine[1]);
-            }
-        }
-        return lookup;
-    }
-
-    private HashMap<String, String> buildHashLookup(String[] localLines) {
-        HashMap<String, String> lookup = new HashMap<>();
-        for (String line : localLines) {
-            String[] splitLine = line.split(":");
-            if (splitLine.length > 2) {
-                lookup.put(splitLine[1].split("\\.")[0], splitLine[2]);
-            }
+    /**
+     * The .dirindex of the directory on the mirror. Taken from memory or the local copy if it
+     * was checked within the TTL, otherwise revalidated with the mirror.
+     */
+    private DirIndex getRemoteDirIndex(WeightedUrl baseUrl, String localBaseDir, String path) throws IOException {
+        Path root = Paths.get(localBaseDir).toAbsolutePath().normalize();
+        String dir = path.replace("\\", "/");
+        DirIndex dirIndex = dirIndexCache.get(root, dir);
+        if (dirIndex != null) {
+            return dirIndex;
         }
-        return lookup;
-    }
-
-    private String[] getRemoteDirIndex(WeightedUrl baseUrl, String localBaseDir, String path) throws IOException {
-        DirIndexCacheKey key = new DirIndexCacheKey(baseUrl, path);
-        if (dirIndexCache.containsKey(key)) {
-            return dirIndexCache.get(key);
+        File localFile = new File(new File(localBaseDir, path), DIRINDEX_FILENAME);
+        DirIndexStore.Entry stored = localFile.exists() ? getDirIndexStore(localBaseDir).get(dir, localFile.length()) : null;
+        String remoteDirIndex;
+        long checked;
+        if (stored != null && dirIndexCache.isFresh(stored.getChecked())) {
+            // checked in an earlier session
+            remoteDirIndex = new String(readFile(localFile));
+            checked = stored.getChecked();
+        } else {
+            remoteDirIndex = downloadDirIndex(baseUrl, localBaseDir, path);
+            checked = System.currentTimeMillis();
         }
-        String remoteDirIndex = new String(downloadFile(baseUrl, path.replace("\\", "/") + "/.dirindex"));
+        dirIndex = DirIndex.parse(remoteDirIndex);
         if (!remoteDirIndex.isEmpty()) {
-            storeDirIndex(path, localBaseDir, remoteDirIndex);
-            dirIndexCache.put(key, remoteDirIndex.split("\r?\n"));
+            dirIndexCache.put(root, dir, dirIndex, checked);
         }
-        return remoteDirIndex.split("\r?\n");
+        return dirIndex;
     }
 
     private void downloadFile(String path, WeightedUrl baseUrl, String fileName, File localFile,
-            WeightedUrl filebaseUrl) throws IOException {
+            WeightedUrl filebaseUrl, String sha1, TerraSyncRootDirectoryType rootType) throws IOException {
         try {
-            downloadFile(localFile, filebaseUrl, path.replace("\\", "/") + "/" + fileName);
+            downloadFile(localFile, filebaseUrl, path.replace("\\", "/") + "/" + fileName, sha1);
         } catch (javax.net.ssl.SSLHandshakeException e) {
             log.log(Level.WARNING, "Handshake Error " + e + " syncing " + path + " removing Base-URL", e);
             JOptionPane.showMessageDialog(terraMaster.frame,
                     "Sync can fail if Java older than 8u101 and 7u111 with https hosts.\r\n"
                     + filebaseUrl.getUrl().toExternalForm(),
                     "SSL Error", JOptionPane.ERROR_MESSAGE);
-            markBad(filebaseUrl, e);
+            markBad(rootType, filebaseUrl, e);
         } catch (SocketException e) {
             log.log(Level.WARNING, "Connect Error " + e + " syncing with " + baseUrl.getUrl().toExternalForm()
                     + path.replace("\\", "/") + " removing Base-URL", e);
-            markBad(filebaseUrl, e);
+            markBad(rootType, filebaseUrl, e);
         }
     }
 
-    private boolean markBad(WeightedUrl filebaseUrl, Exception e) {
+    private boolean markBad(TerraSyncRootDirectoryType rootType, WeightedUrl filebaseUrl, Exception e) {
         TileResult tileResult = downloadStats.get(filebaseUrl);
         tileResult.setException(e);
-        badUrls.put(filebaseUrl, tileResult);
-        return urls.remove(filebaseUrl);
+        badUrls.computeIfAbsent(rootType, t -> new ConcurrentHashMap<>()).put(filebaseUrl, tileResult);
+        return getUrls(rootType).remove(filebaseUrl);
     }
 
     /**
      * Downloads a file and stores it in the given local file
      */
-    private int downloadFile(File localFile, WeightedUrl filebaseUrl, String url) throws IOException {
-        byte[] fileContent = downloadFile(filebaseUrl, url);
-        if (fileContent.length == 0)
-          return 0;
-        try (FileOutputStream fos = new FileOutputStream(localFile.getAbsolutePath())) {
-            fos.write(fileContent);
-        } catch (Exception e) {
-          downloadStats.get(filebaseUrl).errors += 1;
-        }
-        return fileContent.length;
+    private long downloadFile(File localFile, WeightedUrl filebaseUrl, String url, String sha1) throws IOException {
+        return Math.max(0, downloadFile(filebaseUrl, url, localFile.toPath(), sha1));
     }
 
     private String readLocalDirIndex(String path, String localBaseDir) throws IOException {
@@ -725,6 +1077,72 @@ public class HTTPTerraSync extends Thread implements TileService {
         return new String(hexChars);
     }
 
+    /**
+     * The SHA-1 of a local file in hex. The file is only read if its size or modification
+     * time changed since it was last hashed.
+     */
+    private String localHash(String localBaseDir, File file) throws NoSuchAlgorithmException, IOException {
+        FileHashCache cache = getHashCache(localBaseDir);
+        Path path = file.toPath();
+        BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+        byte[] sha1 = cache.get(path, attrs);
+        if (sha1 == null) {
+            sha1 = calcSHA1(file);
+            cache.put(path, attrs, sha1);
+        }
+        return bytesToHex(sha1);
+    }
+
+    private FileHashCache getHashCache(String localBaseDir) {
+        return hashCaches.computeIfAbsent(Paths.get(localBaseDir).toAbsolutePath().normalize(), root -> {
+            FileHashCache cache = new FileHashCache(root);
+            cache.load();
+            return cache;
+        });
+    }
+
+    /**
+     * Remembers the hash of a file that was just verified and moved into place, so the next
+     * sync doesn't have to read it again.
+     */
+    private void recordHash(Path file, byte[] sha1) {
+        Path absolute = file.toAbsolutePath().normalize();
+        for (FileHashCache cache : hashCaches.values()) {
+            if (absolute.startsWith(cache.getRoot())) {
+                try {
+                    cache.put(absolute, Files.readAttributes(absolute, BasicFileAttributes.class), sha1);
+                } catch (IOException e) {
+                    cache.remove(absolute);
+                }
+            }
+        }
+    }
+
+    private DirIndexStore getDirIndexStore(String localBaseDir) {
+        return dirIndexStores.computeIfAbsent(Paths.get(localBaseDir).toAbsolutePath().normalize(), root -> {
+            DirIndexStore store = new DirIndexStore(root);
+            store.load();
+            return store;
+        });
+    }
+
+    private void saveCaches() {
+        for (FileHashCache cache : hashCaches.values()) {
+            try {
+                cache.save();
+            } catch (IOException e) {
+                log.log(Level.WARNING, "Couldn't save hash cache in " + cache.getRoot(), e);
+            }
+        }
+        for (DirIndexStore store : dirIndexStores.values()) {
+            try {
+                store.save();
+            } catch (IOException e) {
+                log.log(Level.WARNING, "Couldn't save dirindex validators in " + store.getRoot(), e);
+            }
+        }
+    }
+
     /**
      * Calculates the SHA1 Hash for the given File
      */
@@ -770,46 +1188,83 @@ public class HTTPTerraSync extends Thread implements TileService {
     }
 
     /**
-     * Does the Async notification of the GUI
+     * Does the Async notification of the GUI. The reports are added up and shown a few times a
+     * second.
      */
-    private void invokeLater(UPDATETYPE action, final int num) {
+    private void reportProgress(UPDATETYPE action, final int num) {
         if (num < 0) {
             log.warning(() -> "Update < 0 (" + action.name() + ")");
         }
-        // invoke this on the Event Disp Thread
-        SwingUtilities.invokeLater(() -> {
-            switch (action) {
+        switch (action) {
+            case RESET: // reset progressBar
+                progress.finish();
+                break;
+            case UPDATE: // update progressBar
+                progress.done(num);
+                break;
+            case EXTEND: // progressBar maximum++
+                progress.extend(num);
+                break;
+            case START:
+                progress.start(num);
+                break;
+            default:
+                break;
+        }
+    }
 
-                case RESET: // reset progressBar
-                    terraMaster.frame.butStop.setEnabled(false);
-                    try {
-                        Thread.sleep(1200);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                    }
-                    terraMaster.frame.progressBar.setMaximum(0);
-                    terraMaster.frame.progressBar.setVisible(false);
-                    break;
-                case UPDATE: // update progressBar
-                    terraMaster.frame.progressUpdate(num);
-                    break;
-                case EXTEND: // progressBar maximum++
-                    terraMaster.frame.progressBar.setMaximum(terraMaster.frame.progressBar.getMaximum() + num);
-                    break;
-                case START:
-                    terraMaster.frame.progressBar.setMaximum(terraMaster.frame.progressBar.getMaximum() + syncList.size() * 2);
-                    terraMaster.frame.progressBar.setVisible(true);
-                    terraMaster.frame.butStop.setEnabled(true);
-                    break;
-                default:
-                    break;
+    /**
+     * Shows what the workers did since the last time. Runs on the EDT.
+     */
+    private void showProgress(SyncProgress.Update update) {
+        MapFrame frame = terraMaster.frame;
+        if (frame == null) {
+            return;
+        }
+        if (update.isFinished()) {
+            frame.butStop.setEnabled(false);
+            // leave the full bar for a moment
+            hideProgress = new Timer(1200, e -> resetProgressBar());
+            hideProgress.setRepeats(false);
+            hideProgress.start();
+        }
+        if (update.isStarted()) {
+            if (hideProgress != null && hideProgress.isRunning()) {
+                hideProgress.stop();
+                resetProgressBar();
             }
-        });
+            frame.progressBar.setVisible(true);
+            frame.butStop.setEnabled(true);
+        }
+        if (update.getExtended() != 0) {
+            frame.progressBar.setMaximum(frame.progressBar.getMaximum() + update.getExtended());
+        }
+        if (update.getDone() != 0) {
+            frame.progressUpdate(update.getDone());
+        }
+    }
+
+    private void resetProgressBar() {
+        terraMaster.frame.progressBar.setMaximum(0);
+        terraMaster.frame.progressBar.setVisible(false);
     }
 
     @Override
     public void restoreSettings() {
         maxAge = Long.parseLong(terraMaster.getProps().getProperty(TerraMasterProperties.MAX_TILE_AGE, "0"));
+        try {
+            syncThreads = Math.max(1, Integer.parseInt(terraMaster.getProps().getProperty(TerraMasterProperties.SYNC_THREADS,
+                    Integer.toString(DEFAULT_SYNC_THREADS))));
+        } catch (NumberFormatException e) {
+            log.log(Level.WARNING, "Illegal " + TerraMasterProperties.SYNC_THREADS, e);
+            syncThreads = DEFAULT_SYNC_THREADS;
+        }
+        try {
+            dirIndexCache.setTtl(TimeUnit.MINUTES.toMillis(Long.parseLong(terraMaster.getProps().getProperty(
+                    TerraMasterProperties.DIRINDEX_TTL, Long.toString(DirIndexCache.DEFAULT_TTL_MINUTES)))));
+        } catch (NumberFormatException e) {
+            log.log(Level.WARNING, "Illegal " + TerraMasterProperties.DIRINDEX_TTL, e);
+        }
 
     }
 
@@ -823,29 +1278,18 @@ public class HTTPTerraSync extends Thread implements TileService {
     public void addScnMapTile(Map<TileName, TileData> map, File i, TerraSyncRootDirectoryType rootType, TerraSyncDirectoryType type) {
       
         TileName n = TileName.getTile(i.getName().replace(".zip", ""));
-        TileData t = map.get(n);
-        if (t == null) {
-            // make a new TileData
-            t = new TileData();
-        }
-        if (type.isTile()) {
-            t.setDirTypePath(rootType, type, i);
-        } else {
+        if (!type.isTile()) {
             throw new IllegalArgumentException("Models and Airports not supported");
         }
-        map.put(n, t);
+        SceneryInventory.add(map, n, rootType, type, i);
+        tileChanged(n);
     }
 
-    /** given a 10x10 dir, add the 1x1 tiles within to the HashMap*/
-    void buildScnMap(File dir, Map<TileName, TileData> map, TerraSyncRootDirectoryType rootType, TerraSyncDirectoryType type) {
-        File[] tiles = dir.listFiles();
-        Pattern p = Pattern.compile(TileName.TILENAME_PATTERN + "(.zip)?");
-
-        for (File f : tiles) {
-            Matcher m = p.matcher(f.getName());
-            if (m.matches()) {
-                addScnMapTile(map, f, rootType, type);
-            }
+    /** Has the map paint the tile again. */
+    private void tileChanged(TileName n) {
+        MapFrame frame = terraMaster.frame;
+        if (n != null && frame != null && frame.map != null) {
+            frame.map.tileChanged(n);
         }
     }
 
@@ -854,36 +1298,8 @@ public class HTTPTerraSync extends Thread implements TileService {
      * @return a map of tiles to their state.
      */
     public Map<TileName, TileData> newScnMap() {
-        List<TerraSyncDirectoryType> types = new ArrayList<>();
-        for (TerraSyncDirectoryType type : TerraSyncDirectoryType.values()) {
-            if (type.isTile()) {
-                types.add(type);
-            }
-        }
-        Pattern patt = Pattern.compile(TileName.TILENAME_PATTERN);
-        Map<TileName, TileData> map = new HashMap<>(180 * 90);
-        
-        for (TerraSyncRootDirectoryType rootType : TerraSyncRootDirectoryType.values()) {
-          String path = terraMaster.getProps().getProperty(rootType + "." + TerraMasterProperties.SCENERY_PATH);
-          if (path == null) {
-            continue;
-          }
-          for (TerraSyncDirectoryType terraSyncDirectoryType : types) {
-              File d = new File(path + File.separator + terraSyncDirectoryType.getDirname());
-              File[] list = d.listFiles();
-              if (list != null) {
-                  // list of 10x10 dirs
-                  for (File f : list) {
-                      Matcher m = patt.matcher(f.getName());
-                      if (m.matches()) {
-                          // now look inside this dir
-                          buildScnMap(f, map, rootType, terraSyncDirectoryType);
-                      }
-                  }
-              }
-          }        
-        }
-
-        return map;
+        SceneryInventory inventory = new SceneryInventory(terraMaster.getSceneryRoots());
+        inventory.scan();
+        return inventory.getMap();
     }
 }
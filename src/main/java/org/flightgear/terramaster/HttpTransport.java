@@ -0,0 +1,50 @@
+package org.flightgear.terramaster;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * The way {@link HTTPTerraSync} talks to the mirrors. Implementations have to be thread
+ * safe since all sync workers share one transport.
+ */
+public interface HttpTransport extends Closeable {
+
+  int CONNECT_TIMEOUT = 10000;
+
+  int READ_TIMEOUT = 20000;
+
+  /**
+   * Sends a GET request and returns once the status line and headers are in.
+   *
+   * @param headers additional request headers
+   */
+  Response get(URL url, Map<String, String> headers) throws IOException;
+
+  /**
+   * Aborts all running requests. Used by cancel and quit. The readers see the closed
+   * streams as IOExceptions.
+   */
+  void abort();
+
+  /**
+   * The answer of the server. Has to be closed so the connection can be reused.
+   */
+  interface Response extends Closeable {
+
+    /** The final URL after redirects. */
+    URL getURL();
+
+    int getResponseCode();
+
+    /** The header or <code>null</code>. Names are case insensitive. */
+    String getHeader(String name);
+
+    InputStream getInputStream() throws IOException;
+
+    @Override
+    void close();
+  }
+}
@@ -0,0 +1,238 @@
+package org.flightgear.terramaster;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A compact binary copy of the {@link SceneryInventory}: for every tile type folder its 10x10
+ * blocks and for every block its tiles, each with the modification time the folder had when it
+ * was listed. Written on exit and read at startup, so the map is complete before a single folder
+ * has been listed. Only folders whose time changed since have to be listed again.
+ */
+public class InventorySnapshot {
+
+  static final String FILENAME = "terramaster.inventory";
+
+  private static final int MAGIC = 0x544d4956; // TMIV
+  private static final int VERSION = 1;
+
+  /** Marks the record of a tile type folder. */
+  static final int NO_BLOCK = -1;
+
+  private static final Logger log = Logger.getLogger(TerraMaster.LOGGER_CATEGORY);
+
+  /**
+   * A folder as it was when the snapshot was taken.
+   */
+  static final class Dir {
+    final long modified;
+    /** The blocks of a type folder or the tiles of a block, see {@link #encode(String)} */
+    final int[] entries;
+
+    Dir(long modified, int[] entries) {
+      this.modified = modified;
+      this.entries = entries;
+    }
+  }
+
+  private final Map<TerraSyncRootDirectoryType, Path> roots;
+  private final Map<Long, Dir> dirs;
+
+  private InventorySnapshot(Map<TerraSyncRootDirectoryType, Path> roots, Map<Long, Dir> dirs) {
+    this.roots = roots;
+    this.dirs = dirs;
+  }
+
+  public Map<TerraSyncRootDirectoryType, Path> getRoots() {
+    return roots;
+  }
+
+  /**
+   * @param block the code of the 10x10 block or {@link #NO_BLOCK} for the type folder
+   */
+  Dir get(TerraSyncRootDirectoryType rootType, TerraSyncDirectoryType type, int block) {
+    return dirs.get(key(rootType, type, block));
+  }
+
+  /**
+   * True if the folder was in the snapshot and hasn't been modified since, so its entries are still
+   * what is on disk.
+   */
+  boolean isCurrent(TerraSyncRootDirectoryType rootType, TerraSyncDirectoryType type, int block, Path dir) {
+    Dir d = get(rootType, type, block);
+    return d != null && d.modified >= 0 && d.modified == modified(dir);
+  }
+
+  /**
+   * @param block the code of the 10x10 block or {@link #NO_BLOCK} for the type folder
+   */
+  static long key(TerraSyncRootDirectoryType rootType, TerraSyncDirectoryType type, int block) {
+    return ((long) rootType.ordinal() << 40) | ((long) type.ordinal() << 32) | (block & 0xffffffffL);
+  }
+
+  /**
+   * The tile id of a tile or block folder, shifted left with the lowest bit set for zips.
+   *
+   * @return the code or {@link #NO_BLOCK} if it isn't a tile name
+   */
+  static int encode(String name) {
+    boolean zip = name.endsWith(".zip");
+    TileName tile = TileName.getTile(zip ? name.substring(0, name.length() - 4) : name);
+    if (tile == null) {
+      return NO_BLOCK;
+    }
+    return (tile.getId() << 1) | (zip ? 1 : 0);
+  }
+
+  private static boolean isCode(int code) {
+    return code >= 0 && code >>> 1 < TileName.TILE_COUNT;
+  }
+
+  static String decode(int code) {
+    String name = TileName.getTile(code >>> 1).getName();
+    return (code & 1) != 0 ? name + ".zip" : name;
+  }
+
+  static long modified(Path dir) {
+    try {
+      return Files.getLastModifiedTime(dir).toMillis();
+    } catch (IOException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Puts the tiles into the map without looking at the disk.
+   */
+  void restore(Map<TileName, TileData> map) {
+    for (Map.Entry<Long, Dir> e : dirs.entrySet()) {
+      int block = (int) (long) e.getKey();
+      if (block == NO_BLOCK) {
+        continue;
+      }
+      TerraSyncRootDirectoryType rootType = TerraSyncRootDirectoryType.values()[(int) (e.getKey() >>> 40)];
+      TerraSyncDirectoryType type = TerraSyncDirectoryType.values()[(int) (e.getKey() >>> 32) & 0xff];
+      Path blockDir = roots.get(rootType).resolve(type.getDirname()).resolve(decode(block));
+      for (int code : e.getValue().entries) {
+        TileName tile = TileName.getTile(code >>> 1);
+        File file = blockDir.resolve(decode(code)).toFile();
+        map.computeIfAbsent(tile, k -> new TileData()).restoreDirTypePath(rootType, type, file);
+      }
+    }
+  }
+
+  /**
+   * Takes a snapshot of the map.
+   *
+   * @param listed the modification times the folders had when they were listed, by
+   *          {@link #key(TerraSyncRootDirectoryType, TerraSyncDirectoryType, int)}. Folders without
+   *          one are listed again at the next start.
+   */
+  static InventorySnapshot of(Map<TerraSyncRootDirectoryType, Path> roots, Map<TileName, TileData> map,
+      Map<Long, Long> listed) {
+    Map<Long, TreeSet<Integer>> entries = new HashMap<>();
+    for (TileData t : map.values()) {
+      for (Map.Entry<TerraSyncRootDirectoryType, Path> root : roots.entrySet()) {
+        for (TerraSyncDirectoryType type : TerraSyncDirectoryType.values()) {
+          File f = type.isTile() ? t.getDir(root.getKey(), type) : null;
+          if (f == null) {
+            continue;
+          }
+          Path blockDir = f.toPath().getParent();
+          Path typeDir = root.getValue().resolve(type.getDirname());
+          int tile = encode(f.getName());
+          int block = encode(blockDir.getFileName().toString());
+          if (tile == NO_BLOCK || block == NO_BLOCK || !typeDir.equals(blockDir.getParent())) {
+            continue;
+          }
+          entries.computeIfAbsent(key(root.getKey(), type, NO_BLOCK), k -> new TreeSet<>()).add(block);
+          entries.computeIfAbsent(key(root.getKey(), type, block), k -> new TreeSet<>()).add(tile);
+        }
+      }
+    }
+    Map<Long, Dir> dirs = new HashMap<>();
+    for (Map.Entry<Long, TreeSet<Integer>> e : entries.entrySet()) {
+      Long modified = listed.get(e.getKey());
+      int[] codes = e.getValue().stream().mapToInt(Integer::intValue).toArray();
+      dirs.put(e.getKey(), new Dir(modified == null ? -1 : modified, codes));
+    }
+    return new InventorySnapshot(new EnumMap<>(roots), dirs);
+  }
+
+  /**
+   * Reads a snapshot.
+   *
+   * @return the snapshot or <code>null</code> if there is none, it can't be read or it is corrupt
+   */
+  static InventorySnapshot load(Path file) {
+    try {
+      return BinaryFiles.readVersioned(file, MAGIC, VERSION, in -> {
+        Map<TerraSyncRootDirectoryType, Path> roots = new EnumMap<>(TerraSyncRootDirectoryType.class);
+        int rootCount = in.readInt();
+        for (int i = 0; i < rootCount; i++) {
+          roots.put(TerraSyncRootDirectoryType.values()[in.readByte()], Paths.get(in.readUTF()));
+        }
+        int dirCount = in.readInt();
+        Map<Long, Dir> dirs = new HashMap<>(dirCount * 2);
+        for (int i = 0; i < dirCount; i++) {
+          long key = in.readLong();
+          checkKey(roots, key);
+          long modified = in.readLong();
+          int[] entries = new int[in.readInt()];
+          for (int j = 0; j < entries.length; j++) {
+            entries[j] = in.readInt();
+            if (!isCode(entries[j])) {
+              throw new IOException("Corrupt entry " + entries[j]);
+            }
+          }
+          dirs.put(key, new Dir(modified, entries));
+        }
+        return new InventorySnapshot(roots, dirs);
+      });
+    } catch (IOException | RuntimeException e) {
+      log.log(Level.WARNING, "Couldn't read inventory snapshot " + file, e);
+    }
+    return null;
+  }
+
+  /** A key that {@link #restore(Map)} can't resolve means the file is broken. */
+  private static void checkKey(Map<TerraSyncRootDirectoryType, Path> roots, long key) throws IOException {
+    int rootType = (int) (key >>> 40);
+    int type = (int) (key >>> 32) & 0xff;
+    int block = (int) key;
+    if (rootType >= TerraSyncRootDirectoryType.values().length
+        || !roots.containsKey(TerraSyncRootDirectoryType.values()[rootType])
+        || type >= TerraSyncDirectoryType.values().length
+        || (block != NO_BLOCK && !isCode(block))) {
+      throw new IOException("Corrupt folder key " + Long.toHexString(key));
+    }
+  }
+
+  public void save(Path file) throws IOException {
+    BinaryFiles.atomicWrite(file, MAGIC, VERSION, out -> {
+      out.writeInt(roots.size());
+      for (Map.Entry<TerraSyncRootDirectoryType, Path> root : roots.entrySet()) {
+        out.writeByte(root.getKey().ordinal());
+        out.writeUTF(root.getValue().toString());
+      }
+      out.writeInt(dirs.size());
+      for (Map.Entry<Long, Dir> e : dirs.entrySet()) {
+        out.writeLong(e.getKey());
+        out.writeLong(e.getValue().modified);
+        out.writeInt(e.getValue().entries.length);
+        for (int code : e.getValue().entries) {
+          out.writeInt(code);
+        }
+      }
+    });
+  }
+}
@@ -41,6 +41,7 @@ import javax.swing.JPanel;
 import javax.swing.JProgressBar;
 import javax.swing.JTextField;
 import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
 import javax.swing.border.EtchedBorder;
 import javax.swing.border.MatteBorder;
@@ -110,6 +111,9 @@ public class MapFrame extends JFrame {
             set.add(tname);
           });
 
+          List<TileName> route = map.getRoute();
+          terraMaster.getTileService().setSyncOrder(route != null ? SyncOrder.byRoute(route)
+              : SyncOrder.byDistance(map.getCenterLat(), map.getCenterLon()));
           terraMaster.getTileService().sync(set, false);
           map.clearSelection();
           repaint();
@@ -132,6 +136,10 @@ public class MapFrame extends JFrame {
             });
           }
 
+          terraMaster.getTileService().setSyncOrder(SyncOrder.byAge(t -> {
+            TileData d = terraMaster.getMapScenery().get(t);
+            return d == null ? 0 : d.getLastSynced();
+          }));
           terraMaster.getTileService().sync(set, true);
           map.clearSelection();
           repaint();
@@ -501,20 +509,32 @@ public class MapFrame extends JFrame {
     repaint();
   }
   /**
-   * called from Sync thread
+   * Reads the map layers off the EDT, each is shown as soon as it is there.
+   */
+  private void loadMaps() {
+    List<MapPoly> polys = new GshhsReader().newPolyList("maps/gshhs_i.b");
+    SwingUtilities.invokeLater(() -> passPolys(polys));
+    List<MapPoly> borders = new GshhsReader().newPolyList("maps/wdb_borders_i.b");
+    SwingUtilities.invokeLater(() -> passBorders(borders));
+    List<MapPoly> rivers = new GshhsReader().newPolyList("maps/wdb_rivers_i.b");
+    SwingUtilities.invokeLater(() -> passRivers(rivers));
+  }
+
+  /**
+   * called on the EDT with the progress of the sync threads, a few times a second. The bar paints
+   * itself, the map paints the tiles that changed.
    */
   public void progressUpdate(int n) {
     progressBar.setValue(progressBar.getValue() + n);
     progressBar.setToolTipText(progressBar.getValue() + " / " + progressBar.getMaximum());
-    repaint();
   }
 
   @Override
   public void setVisible(boolean visible) {
     super.setVisible(visible);
-    passPolys(new GshhsReader().newPolyList("maps/gshhs_i.b"));
-    passBorders(new GshhsReader().newPolyList("maps/wdb_borders_i.b"));
-    passRivers(new GshhsReader().newPolyList("maps/wdb_rivers_i.b"));
+    Thread loader = new Thread(this::loadMaps, "Map loader");
+    loader.setDaemon(true);
+    loader.start();
     addWindowListener(new WindowAdapter() {
       @Override
       public void windowClosing(WindowEvent e) {
@@ -527,6 +547,7 @@ public class MapFrame extends JFrame {
           JOptionPane.showMessageDialog(null, "Couldn't store Properties " + x, "Error",
               JOptionPane.ERROR_MESSAGE);
         }
+        terraMaster.saveInventory();
         LOG.info("Shut down Terramaster");
       }
     });
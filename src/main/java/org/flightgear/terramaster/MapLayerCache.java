@@ -0,0 +1,163 @@
+package org.flightgear.terramaster;
+
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Images of the {@link MapLayers} for the last few views. They are painted on a background thread,
+ * the EDT only draws finished images. While the image of a new view is painted the nearest
+ * image of the same projection is shown scaled and moved to the new centre.
+ * <p>
+ * This is also the cache of the projected layer geometry: repaints for progress updates, tooltips
+ * or the selection draw the image of the unchanged view and project nothing.
+ * <p>
+ * Both projections move the whole globe when the centre changes, so the images are cached per view
+ * and not in tiles of fixed coordinates.
+ */
+class MapLayerCache {
+
+  private static final Logger LOG = Logger.getLogger(TerraMaster.LOGGER_CATEGORY);
+
+  /** A full screen image is several MB, keep a few zoom levels and pan positions */
+  static final int MAX_IMAGES = 4;
+
+  private final MapLayers layers;
+  /** Called on the painting thread when an image is ready */
+  private final Runnable listener;
+  private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+    Thread t = new Thread(r, "Map painter");
+    t.setDaemon(true);
+    return t;
+  });
+
+  /** Least recently used first */
+  private final LinkedHashMap<MapView, BufferedImage> images = new LinkedHashMap<MapView, BufferedImage>(8, 0.75f,
+      true) {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<MapView, BufferedImage> eldest) {
+      return size() > MAX_IMAGES;
+    }
+  };
+  /** The view to paint next, only the latest one asked for */
+  private MapView wanted;
+  private boolean painting;
+  /** Counts {@link #clear()}, images painted before are dropped */
+  private int generation;
+
+  MapLayerCache(MapLayers layers, Runnable listener) {
+    this.layers = layers;
+    this.listener = listener;
+  }
+
+  MapLayers getLayers() {
+    return layers;
+  }
+
+  /**
+   * The image of the view if it is ready. If not it will be painted and the listener called.
+   *
+   * @return the image or <code>null</code>
+   */
+  synchronized BufferedImage get(MapView view) {
+    BufferedImage image = images.get(view);
+    if (image == null && view.width > 0 && view.height > 0) {
+      wanted = view;
+      if (!painting) {
+        painting = true;
+        executor.execute(this::paintWanted);
+      }
+    }
+    return image;
+  }
+
+  /**
+   * Draws the view, the image if it is ready or else the best guess from another view.
+   */
+  void draw(Graphics2D g, MapView view) {
+    BufferedImage image = get(view);
+    if (image != null) {
+      g.drawImage(image, 0, 0, null);
+      return;
+    }
+    g.setBackground(MapLayers.SEA);
+    g.clearRect(0, 0, view.width, view.height);
+    Map.Entry<MapView, BufferedImage> nearest = nearest(view);
+    if (nearest == null) {
+      return;
+    }
+    Point2D.Double center = MapLayers.locate(view, nearest.getKey());
+    if (center == null) {
+      return;
+    }
+    double zoom = Math.pow(2, (view.fromMetres - nearest.getKey().fromMetres) / 4);
+    AffineTransform t = new AffineTransform();
+    t.translate(view.width / 2.0, view.height / 2.0);
+    t.scale(zoom, zoom);
+    t.translate(-center.x, -center.y);
+    g.drawImage(nearest.getValue(), t, null);
+  }
+
+  /** The most recently used image of the same projection and size. */
+  private synchronized Map.Entry<MapView, BufferedImage> nearest(MapView view) {
+    Map.Entry<MapView, BufferedImage> nearest = null;
+    for (Map.Entry<MapView, BufferedImage> e : images.entrySet()) {
+      MapView v = e.getKey();
+      if (v.winkel == view.winkel && v.width == view.width && v.height == view.height) {
+        nearest = e;
+      }
+    }
+    return nearest;
+  }
+
+  /** Forgets the images, the layers changed. */
+  synchronized void clear() {
+    images.clear();
+    generation++;
+  }
+
+  private void paintWanted() {
+    while (true) {
+      MapView view;
+      int paintedGeneration;
+      synchronized (this) {
+        paintedGeneration = generation;
+        view = wanted;
+        wanted = null;
+        if (view == null || images.containsKey(view)) {
+          painting = false;
+          return;
+        }
+      }
+      try {
+        BufferedImage image = new BufferedImage(view.width, view.height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        try {
+          layers.paint(g, view);
+        } finally {
+          g.dispose();
+        }
+        synchronized (this) {
+          if (paintedGeneration != generation) {
+            // the layers changed while we painted
+            wanted = wanted == null ? view : wanted;
+            continue;
+          }
+          images.put(view, image);
+        }
+        listener.run();
+      } catch (RuntimeException e) {
+        LOG.log(Level.WARNING, "Painting the map failed", e);
+      }
+    }
+  }
+}
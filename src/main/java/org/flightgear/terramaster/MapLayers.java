@@ -0,0 +1,302 @@
+package org.flightgear.terramaster;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Point2D;
+import java.util.List;
+
+import org.flightgear.terramaster.gshhs.MapPoly;
+import org.flightgear.terramaster.gshhs.PolyPyramid;
+
+import com.jhlabs.map.proj.Projection;
+import com.jhlabs.map.proj.ProjectionException;
+
+/**
+ * Paints the layers of the map that don't change while TerraMaster runs: landmass, borders,
+ * rivers and the graticule. Each paint uses its own projection built from the {@link MapView}, so
+ * it can run on any thread, but only on one at a time.
+ */
+class MapLayers {
+
+  static final Color SEA = new Color(0, 0, 64);
+  static final Color LAND = new Color(64, 128, 0);
+  static final Color BORDER = new Color(128, 192, 128);
+
+  private volatile PolyPyramid continents = new PolyPyramid(null, true);
+  private volatile PolyPyramid borders = new PolyPyramid(null, false);
+  private volatile PolyPyramid rivers = new PolyPyramid(null, false);
+
+  private Projection pj;
+  private VisibleCap cap;
+  /** The projected points of the polygon being drawn */
+  private int[] xpoints = new int[0];
+  private int[] ypoints = new int[0];
+  private final Point2D.Double point = new Point2D.Double();
+  private double projectionLatitude;
+  private double projectionLongitude;
+
+  void setContinents(List<MapPoly> continents) {
+    this.continents = new PolyPyramid(continents, true);
+  }
+
+  void setBorders(List<MapPoly> borders) {
+    this.borders = new PolyPyramid(borders, false);
+  }
+
+  void setRivers(List<MapPoly> rivers) {
+    this.rivers = new PolyPyramid(rivers, false);
+  }
+
+  List<MapPoly> getContinents() {
+    return continents.getPolys();
+  }
+
+  /**
+   * Paints the layers over the whole view. Filters the continents by size and zoom and uses the
+   * level of detail that fits the size of a pixel. The {@link MapLayerCache} keeps the image per
+   * view, so this only runs when the view changes.
+   */
+  void paint(Graphics2D g2, MapView view) {
+    setView(view);
+    g2.setBackground(SEA);
+    g2.clearRect(0, 0, view.width, view.height);
+    AffineTransform affine = view.createTransform(pj);
+    g2.setTransform(affine);
+    double[] visible = getVisibleBounds(view, pj, affine);
+    double degreesPerPixel = getDegreesPerPixel(affine);
+
+    paintLayer(g2, continents.getLevel(degreesPerPixel), visible, 20 / Math.pow(2, view.fromMetres / 4), true);
+    // borders
+    g2.setColor(BORDER);
+    paintLayer(g2, borders.getLevel(degreesPerPixel), visible, 0, false);
+    // rivers
+    g2.setColor(SEA);
+    paintLayer(g2, rivers.getLevel(degreesPerPixel), visible, 0, false);
+
+    g2.setColor(Color.gray);
+    drawGraticule(g2, 10);
+  }
+
+  private void setView(MapView view) {
+    pj = view.createProjection();
+    projectionLatitude = view.latitude;
+    projectionLongitude = view.longitude;
+    cap = new VisibleCap(projectionLatitude, projectionLongitude, view.getMapRadius());
+  }
+
+  /**
+   * Draws the visible points of the polygons. Polygons outside the visible bounds aren't looked at.
+   *
+   * @param visible west, south, east, north in degrees
+   * @param minPoints smaller polygons are left out
+   * @param fill fills the polygons in the colour of their level instead of drawing the lines
+   */
+  private void paintLayer(Graphics2D g2, PolyPyramid.Level layer, double[] visible, double minPoints,
+      boolean fill) {
+    int[] found = new int[layer.polys.size()];
+    int count = layer.index.query(visible[0], visible[1], visible[2], visible[3], found);
+    for (int i = 0; i < count; i++) {
+      MapPoly s = layer.polys.get(found[i]);
+      if (minPoints > 0 && s.getNumPoints() <= minPoints) {
+        continue;
+      }
+      int n = convertPolyline(s);
+      if (n == 0) {
+        continue;
+      }
+      if (fill) {
+        g2.setColor(s.level % 2 == 1 ? LAND : SEA);
+        g2.fillPolygon(xpoints, ypoints, n);
+      } else {
+        g2.drawPolyline(xpoints, ypoints, n);
+      }
+    }
+  }
+
+  // in: MapPoly
+  // out: npoints
+  private int convertPolyline(MapPoly s) {
+    if (xpoints.length < s.npoints) {
+      xpoints = new int[s.npoints];
+      ypoints = new int[s.npoints];
+    }
+    int j = 0;
+    for (int i = 0; i < s.npoints; ++i) {
+      int x = s.xpoints[i];
+      int y = s.ypoints[i];
+      if (cap.containsCentidegrees(x, y)) {
+        project(Math.toRadians(x / 100.0), Math.toRadians(y / 100.0), point);
+        xpoints[j] = (int) point.x;
+        ypoints[j] = (int) point.y;
+        ++j;
+      }
+    }
+    return j;
+  }
+
+  /**
+   * Draws the cells of the graticule whose corner is visible. Each corner is projected once, not
+   * once for every cell it belongs to.
+   */
+  private void drawGraticule(Graphics2D g, int sp) {
+    // the cells start at 70 north, the first row of corners is their top
+    int cols = (360 + sp - 1) / sp + 1;
+    int rows = (160 + sp - 1) / sp + 1;
+    int n = cols * rows;
+    double[] l = new double[n];
+    double[] b = new double[n];
+    for (int i = 0; i < n; i++) {
+      l[i] = Math.toRadians(-180 + (double) (i / rows) * sp);
+      b[i] = Math.toRadians(-70 - sp + (double) (i % rows) * sp);
+    }
+    int[] xn = new int[n];
+    int[] yn = new int[n];
+    for (int i = 0; i < n; i++) {
+      project(l[i], b[i], point);
+      xn[i] = (int) point.x;
+      yn[i] = (int) point.y;
+    }
+
+    int[] x4 = new int[4];
+    int[] y4 = new int[4];
+    for (int c = 0; c + 1 < cols; c++) {
+      for (int r = 1; r < rows; r++) {
+        int i = c * rows + r;
+        if (cap.containsCentidegrees((-180 + c * sp) * 100, (-70 - sp + r * sp) * 100)) {
+          // left bottom, right bottom, right top, left top with the latitude negated
+          int[] corners = { i, i + rows, i + rows - 1, i - 1 };
+          for (int k = 0; k < 4; k++) {
+            x4[k] = xn[corners[k]];
+            y4[k] = yn[corners[k]];
+          }
+          g.drawPolygon(x4, y4, 4);
+        }
+      }
+    }
+  }
+
+  private void project(double lam, double phi, Point2D.Double d) {
+    d.x = lam;
+    d.y = phi;
+    // javaproj reads the source before it writes the result, one point will do
+    pj.transformRadians(d, d);
+  }
+
+  /**
+   * The size of a pixel at the centre of the map, measured along the meridian.
+   */
+  private double getDegreesPerPixel(AffineTransform affine) {
+    final double step = 0.1;
+    // towards the equator, the other way may be beyond the pole
+    double phi = projectionLatitude + Math.toRadians(projectionLatitude > 0 ? -step : step);
+    Point2D.Double a = new Point2D.Double();
+    Point2D.Double b = new Point2D.Double();
+    try {
+      project(projectionLongitude, projectionLatitude, a);
+      project(projectionLongitude, phi, b);
+    } catch (ProjectionException e) {
+      return Double.MAX_VALUE;
+    }
+    affine.deltaTransform(new Point2D.Double(b.x - a.x, b.y - a.y), b);
+    double pixels = Math.hypot(b.x, b.y);
+    return pixels > 0 ? step / pixels : Double.MAX_VALUE;
+  }
+
+  /**
+   * The bounding box of the part of the globe that can be seen, the circle around the centre that
+   * holds the panel or the map radius if that is smaller.
+   *
+   * @param pj the projection of the view
+   * @param affine from projected coordinates to the pixels of the view
+   * @return west, south, east, north in degrees, east may be beyond 180
+   */
+  static double[] getVisibleBounds(MapView view, Projection pj, AffineTransform affine) {
+    double radius = Math.min(getPanelRadius(view, pj, affine), view.getMapRadius());
+    // MapPanel has the latitude negated
+    double lat = -view.latitude;
+    double south = lat - radius;
+    double north = lat + radius;
+    if (radius >= MapPanel.HALFPI || north >= MapPanel.HALFPI || south <= -MapPanel.HALFPI) {
+      return new double[] { -180, Math.toDegrees(Math.max(south, -MapPanel.HALFPI)), 180,
+          Math.toDegrees(Math.min(north, MapPanel.HALFPI)) };
+    }
+    double dLon = Math.asin(Math.min(1, Math.sin(radius) / Math.cos(lat)));
+    double lon = Math.toDegrees(view.longitude);
+    return new double[] { lon - Math.toDegrees(dLon), Math.toDegrees(south), lon + Math.toDegrees(dLon),
+        Math.toDegrees(north) };
+  }
+
+  /**
+   * How far from the centre the points on the edge of the panel are, in radians.
+   *
+   * @return the distance or {@link Math#PI} if the edge isn't all on the globe
+   */
+  private static double getPanelRadius(MapView view, Projection pj, AffineTransform affine) {
+    AffineTransform inverse;
+    try {
+      inverse = affine.createInverse();
+    } catch (NoninvertibleTransformException e) {
+      return Math.PI;
+    }
+    final int steps = 8;
+    Point2D.Double p = new Point2D.Double();
+    Point2D.Double back = new Point2D.Double();
+    VisibleCap centre = new VisibleCap(view.latitude, view.longitude, Math.PI);
+    // the farthest point has the smallest cosine, one acos at the end
+    double minCos = 1;
+    for (int i = 0; i < 4 * steps; i++) {
+      double f = (double) (i % steps) / steps;
+      switch (i / steps) {
+        case 0:
+          p.setLocation(view.width * f, 0);
+          break;
+        case 1:
+          p.setLocation(view.width, view.height * f);
+          break;
+        case 2:
+          p.setLocation(view.width * (1 - f), view.height);
+          break;
+        default:
+          p.setLocation(0, view.height * (1 - f));
+          break;
+      }
+      double x = p.x;
+      double y = p.y;
+      try {
+        inverse.transform(p, p);
+        pj.inverseTransformRadians(p, p);
+        // off the globe the inverse projections return anything, project back to check
+        back.setLocation(p);
+        pj.transformRadians(back, back);
+        affine.transform(back, back);
+      } catch (ProjectionException e) {
+        return Math.PI;
+      }
+      if (Double.isNaN(p.x) || Double.isNaN(p.y) || Math.abs(back.x - x) > 1 || Math.abs(back.y - y) > 1) {
+        return Math.PI;
+      }
+      minCos = Math.min(minCos, centre.cosDistance(p.x, p.y));
+    }
+    // the edge between the samples bulges a little
+    return Math.acos(Math.max(-1, minCos)) * 1.1;
+  }
+
+  /**
+   * Where the centre of one view is in the pixels of another.
+   *
+   * @return the point or <code>null</code> if it isn't visible there
+   */
+  static Point2D.Double locate(MapView center, MapView in) {
+    if (!new VisibleCap(in.latitude, in.longitude, in.getMapRadius()).contains(center.longitude, center.latitude)) {
+      return null;
+    }
+    Projection p = in.createProjection();
+    AffineTransform affine = in.createTransform(p);
+    Point2D.Double d = new Point2D.Double(center.longitude, center.latitude);
+    p.transformRadians(d, d);
+    affine.transform(d, d);
+    return d;
+  }
+}
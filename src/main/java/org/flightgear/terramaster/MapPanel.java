@@ -10,6 +10,7 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseWheelEvent;
 import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
 import java.awt.geom.Point2D;
 import java.awt.geom.Point2D.Double;
 import java.awt.image.BufferedImage;
@@ -17,12 +18,13 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.swing.*;
 
@@ -298,9 +300,8 @@ public class MapPanel extends JPanel {
     }
   }
 
-  private List<MapPoly> continents;  
-  private List<MapPoly> borders;
-  private List<MapPoly> rivers;
+  /** Landmass, borders, rivers and graticule, painted in the background */
+  private final transient MapLayerCache layerCache = new MapLayerCache(new MapLayers(), this::repaint);
   transient MouseAdapter mousehandler;
 
   double scale;
@@ -309,6 +310,18 @@ public class MapPanel extends JPanel {
   boolean isWinkel = true;
 
   private transient Projection pj;
+  /** What inside() tests against, made again when the centre or the radius changed */
+  private transient VisibleCap cap;
+  /** The boxes of the tiles projected for boxView, by tile id */
+  private transient Polygon[] boxes;
+  private transient MapView boxView;
+  /** A box that can't be seen in {@link #boxes} */
+  private static final Polygon HIDDEN = new Polygon();
+  /** Tiles whose state changed since they were painted, from any thread */
+  private final transient Set<TileName> changedTiles = ConcurrentHashMap.newKeySet();
+  private final AtomicBoolean changedTilesPending = new AtomicBoolean();
+  /** More changed tiles than this and the whole map is painted */
+  private static final int MAX_CHANGED_TILES = 64;
   private double projectionLatitude = -Math.toRadians(-30);
   private double projectionLongitude = Math.toRadians(145);
   private double mapRadius = HALFPI;
@@ -317,6 +330,8 @@ public class MapPanel extends JPanel {
   static final double TWOPI = Math.PI * 2.0;
 
   private final Collection<TileName> selectionSet = new LinkedHashSet<>();
+  /** The tiles of the flight plan in the order they are flown over. null if there is none. */
+  private List<TileName> route;
   private int[] dragbox;
   private transient BufferedImage offScreen;
   private TileName cursorTilename;
@@ -327,7 +342,7 @@ public class MapPanel extends JPanel {
     MPAdapter ad = new MPAdapter();
     addComponentListener(ad);
 
-    continents = new ArrayList<>();
+    layerCache.getLayers().setContinents(new ArrayList<>());
     setWinkel();
 
     setToolTipText("Hover for tile info");
@@ -516,7 +531,7 @@ public class MapPanel extends JPanel {
   }
 
   public int polyCount() {
-    return continents.size();
+    return layerCache.getLayers().getContinents().size();
   }
 
   /**
@@ -548,6 +563,29 @@ public class MapPanel extends JPanel {
   public void setSelection(Collection<TileName> selectionSet) {
     this.selectionSet.clear();
     this.selectionSet.addAll(selectionSet);
+    route = null;
+  }
+
+  /**
+   * Selects the tiles of a flight plan. They will be synced in this order.
+   */
+  public void setRoute(List<TileName> route) {
+    setSelection(route);
+    this.route = new ArrayList<>(route);
+  }
+
+  List<TileName> getRoute() {
+    return route;
+  }
+
+  /** Latitude of the centre of the map in degrees. */
+  double getCenterLat() {
+    return -Math.toDegrees(projectionLatitude);
+  }
+
+  /** Longitude of the centre of the map in degrees. */
+  double getCenterLon() {
+    return Math.toDegrees(projectionLongitude);
   }
 
   /**
@@ -578,6 +616,7 @@ public class MapPanel extends JPanel {
 
   void clearSelection() {
     selectionSet.clear();
+    route = null;
     if (mapFrame != null) {
       mapFrame.butSync.setEnabled(false);
       mapFrame.butDelete.setEnabled(false);
@@ -605,7 +644,8 @@ public class MapPanel extends JPanel {
   void showSyncList(Graphics g) {
     if (terraMaster.getTileService() == null)
       return;
-    Collection<Syncable> a = new ArrayList<>(terraMaster.getTileService().getSyncList());
+    // an immutable snapshot of the queue, no copy needed
+    Collection<Syncable> a = terraMaster.getTileService().getSyncList();
     g.setColor(Color.cyan);
     for (Syncable s : a) {
       if (s instanceof TileName) {
@@ -624,51 +664,31 @@ public class MapPanel extends JPanel {
     mapFrame.butSearch.setEnabled(b);
   }
 
-  void drawGraticule(Graphics g, int sp) {
-    int x, y;
-    Point2D.Double p = new Point2D.Double();
-    double l;
-    double r;
-    double t;
-    double b;
-    int[] x4 = new int[4];
-    int[] y4 = new int[4];
-
-    x = -180;
-    while (x < 180) {
-      y = -70;
-      while (y < 90) {
-        l = Math.toRadians(x);
-        b = Math.toRadians(y);
-        r = Math.toRadians((double) x + sp);
-        t = Math.toRadians((double) y - sp);
-
-        if (inside(l, b)) {
-          project(l, b, p);
-          x4[0] = (int) p.x;
-          y4[0] = (int) p.y;
-          project(r, b, p);
-          x4[1] = (int) p.x;
-          y4[1] = (int) p.y;
-          project(r, t, p);
-          x4[2] = (int) p.x;
-          y4[2] = (int) p.y;
-          project(l, t, p);
-          x4[3] = (int) p.x;
-          y4[3] = (int) p.y;
-          g.drawPolygon(x4, y4, 4);
-        }
-
-        y += sp;
-      }
-      x += sp;
-    }
-  }
-
   /**
-   * Returns a box that is paintable w and s are negative
+   * Returns a box that is paintable w and s are negative. The boxes are kept until the projection
+   * changes.
    */
   Polygon getBox(int x, int y) {
+    int id = TileName.getId(y, x);
+    if (id < 0) {
+      return projectBox(x, y);
+    }
+    if (boxes == null) {
+      boxes = new Polygon[TileName.TILE_COUNT];
+      boxView = getView();
+    } else if (!boxView.isProjection(isWinkel, projectionLatitude, projectionLongitude, fromMetres)) {
+      Arrays.fill(boxes, null);
+      boxView = getView();
+    }
+    Polygon box = boxes[id];
+    if (box == null) {
+      box = projectBox(x, y);
+      boxes[id] = box == null ? HIDDEN : box;
+    }
+    return box == HIDDEN ? null : box;
+  }
+
+  private Polygon projectBox(int x, int y) {
     double l;
     double r;
     double t;
@@ -677,14 +697,13 @@ public class MapPanel extends JPanel {
     int[] y4 = new int[4];
     Point2D.Double p = new Point2D.Double();
 
-    
     double inc = 1;
     l = Math.toRadians(x);
     b = Math.toRadians(-y);
     r = Math.toRadians((double) x + inc);
     t = Math.toRadians((double) -y - inc);
 
-    if (!inside(l, b)) {
+    if (!getVisibleCap().containsCentidegrees(x * 100, -y * 100)) {
       return null;
     }
 
@@ -704,43 +723,60 @@ public class MapPanel extends JPanel {
   }
 
   /**
-   * Shows the downloaded tiles
+   * Shows the downloaded tiles. Looks at the tiles in the visible part of the globe or at the
+   * downloaded ones, whichever are fewer, and draws the boxes of each colour in one go.
    */
 
   void showTiles(Graphics g0) {
     Graphics2D g = (Graphics2D) g0;
 
-    g.setBackground(Color.black);
-    g.setColor(Color.gray);
-    drawGraticule(g, 10);
-
-    if (terraMaster.getMapScenery() == null)
+    Map<TileName, TileData> scenery = terraMaster.getMapScenery();
+    if (scenery == null)
       return;
-    Set<TileName> keys = terraMaster.getMapScenery().keySet();
-    Pattern p = Pattern.compile(TileName.TILENAME_PATTERN);
-
-    for (TileName tilename : keys) {
-      if (tilename == null)
-        continue;
-      Matcher m = p.matcher(tilename.getName());
-      if (m.matches()) {
-        int lon = Integer.parseInt(m.group(2));
-        int lat = Integer.parseInt(m.group(4));
-        lon = m.group(1).equals("w") ? -lon : lon;
-        lat = m.group(3).equals("s") ? -lat : lat;
-
-        Polygon poly = getBox(lon, lat);
-        TileData t = terraMaster.getMapScenery().get(tilename);
-        if (poly != null) {          
-          if (hasAllDirs(t)) {
-            g.setColor(Color.green);
-          }
-          else
-            g.setColor(Color.yellow);
-          g.drawPolygon(poly);
+    long required = requiredDirs();
+    Path2D.Double complete = new Path2D.Double();
+    Path2D.Double incomplete = new Path2D.Double();
+
+    // in projected coordinates, the transform is set
+    Rectangle clip = g.getClipBounds();
+    double[] visible = MapLayers.getVisibleBounds(getView(), pj, affine);
+    int west = (int) Math.floor(visible[0]);
+    int south = Math.max((int) Math.floor(visible[1]), -90);
+    int east = Math.min((int) Math.floor(visible[2]), west + 359);
+    int north = Math.min((int) Math.floor(visible[3]), 89);
+    long cells = (long) (east - west + 1) * (north - south + 1);
+
+    if (cells < scenery.size()) {
+      for (int lat = south; lat <= north; lat++) {
+        for (int lon = west; lon <= east; lon++) {
+          TileName tilename = TileName.getTile(TileName.getId(lat, Math.floorMod(lon + 180, 360) - 180));
+          addBox(tilename, scenery.get(tilename), required, clip, complete, incomplete);
+        }
+      }
+    } else {
+      for (Map.Entry<TileName, TileData> e : scenery.entrySet()) {
+        TileName tilename = e.getKey();
+        if (tilename.getLat() >= south && tilename.getLat() <= north
+            && Math.floorMod(tilename.getLon() - west, 360) <= east - west) {
+          addBox(tilename, e.getValue(), required, clip, complete, incomplete);
         }
       }
     }
+    g.setColor(Color.green);
+    g.draw(complete);
+    g.setColor(Color.yellow);
+    g.draw(incomplete);
+  }
+
+  private void addBox(TileName tilename, TileData t, long required, Rectangle clip, Path2D complete,
+      Path2D incomplete) {
+    if (tilename == null || t == null) {
+      return;
+    }
+    Polygon poly = getBox(tilename.getLon(), tilename.getLat());
+    if (poly != null && (clip == null || poly.getBounds().intersects(clip))) {
+      (t.hasAll(required) ? complete : incomplete).append(poly, false);
+    }
   }
 
   /**
@@ -779,86 +815,17 @@ public class MapPanel extends JPanel {
   }
 
   /**
-   * draws the landmass. filter by polygon size and zoom
+   * Draws landmass, borders, rivers and graticule as far as they are painted for the view.
    */
   void showLandmass(Graphics g) {
     Graphics2D g2 = (Graphics2D) g;
-    Color sea = new Color(0, 0, 64);
-    Color land = new Color(64, 128, 0);
-    Color border = new Color(128, 192, 128);
-    Rectangle r = g2.getClipBounds();
-
-    g2.setColor(land);
-    g2.setBackground(sea);
-    g2.clearRect(r.x, r.y, r.width, r.height);
+    layerCache.draw(g2, getView());
     g2.setTransform(affine);
-    for (MapPoly s : continents) {
-      if (s.getNumPoints() > 20 / Math.pow(2, fromMetres / 4)) {
-        MapPoly d = convertPoly(s);
-        g2.setColor(s.level % 2 == 1 ? land : sea);
-        if (d.npoints != 0)
-          g2.fillPolygon(d);
-      }
-    }
-    // borders
-    g2.setColor(border);
-    if (borders != null) {
-      for (MapPoly s : borders) {
-        int[] xp = new int[s.npoints], yp = new int[s.npoints];
-        int n = convertPolyline(s, xp, yp);
-        if (n != 0)
-          g2.drawPolyline(xp, yp, n);
-      }
-    }
-    // rivers
-    g2.setColor(sea);
-    if (rivers != null) {
-      for (MapPoly s : rivers) {
-        int[] xp = new int[s.npoints], yp = new int[s.npoints];
-        int n = convertPolyline(s, xp, yp);
-        if (n != 0)
-          g2.drawPolyline(xp, yp, n);
-      }
-    }
   }
 
-  // in: MapPoly
-  // out: transformed new MapPoly
-  MapPoly convertPoly(MapPoly s) {
-    int i;
-    Point2D.Double p = new Point2D.Double();
-    MapPoly d = new MapPoly();
-
-    for (i = 0; i < s.npoints; ++i) {
-      double x = s.xpoints[i], y = s.ypoints[i];
-      x = Math.toRadians(x / 100.0);
-      y = Math.toRadians(y / 100.0);
-      if (inside(x, y)) {
-        project(x, y, p);
-        d.addPoint((int) p.x, (int) p.y);
-      }
-    }
-    return d;
-  }
-
-  // in: MapPoly
-  // out: npoints
-  int convertPolyline(MapPoly s, int[] xpoints, int[] ypoints) {
-    Point2D.Double p = new Point2D.Double();
-
-    int i, j = 0;
-    for (i = 0; i < s.npoints; ++i) {
-      double x = s.xpoints[i], y = s.ypoints[i];
-      x = Math.toRadians(x / 100.0);
-      y = Math.toRadians(y / 100.0);
-      if (inside(x, y)) {
-        project(x, y, p);
-        xpoints[j] = (int) p.x;
-        ypoints[j] = (int) p.y;
-        ++j;
-      }
-    }
-    return j;
+  /** The view the map is painted with now. */
+  MapView getView() {
+    return new MapView(isWinkel, projectionLatitude, projectionLongitude, fromMetres, getWidth(), getHeight());
   }
 
   /**
@@ -866,12 +833,55 @@ public class MapPanel extends JPanel {
    */
 
   void project(double lam, double phi, Point2D.Double d) {
-    Point2D.Double s = new Point2D.Double(lam, phi);
-    pj.transformRadians(s, d);
+    d.x = lam;
+    d.y = phi;
+    // javaproj reads the source before it writes the result, one point will do
+    pj.transformRadians(d, d);
+  }
+
+  private VisibleCap getVisibleCap() {
+    if (cap == null || !cap.isFor(projectionLatitude, projectionLongitude, mapRadius)) {
+      cap = new VisibleCap(projectionLatitude, projectionLongitude, mapRadius);
+    }
+    return cap;
   }
 
   boolean inside(double lon, double lat) {
-    return CoordinateCalculation.oldHaversine(lat, lon, projectionLatitude, projectionLongitude) < mapRadius;
+    return getVisibleCap().contains(lon, lat);
+  }
+
+  /**
+   * The tile was synced or its state on disk changed. Only the boxes of the changed tiles are
+   * painted again, the first call after a paint schedules it.
+   */
+  void tileChanged(TileName tile) {
+    if (changedTiles.add(tile) && changedTilesPending.compareAndSet(false, true)) {
+      SwingUtilities.invokeLater(this::repaintChangedTiles);
+    }
+  }
+
+  private void repaintChangedTiles() {
+    changedTilesPending.set(false);
+    if (affine == null || offScreen == null) {
+      changedTiles.clear();
+      return;
+    }
+    if (changedTiles.size() > MAX_CHANGED_TILES) {
+      changedTiles.clear();
+      repaint();
+      return;
+    }
+    for (Iterator<TileName> it = changedTiles.iterator(); it.hasNext();) {
+      TileName tile = it.next();
+      it.remove();
+      Polygon box = getBox(tile.getLon(), tile.getLat());
+      if (box != null) {
+        Rectangle r = affine.createTransformedShape(box).getBounds();
+        // the width of the lines
+        r.grow(2, 2);
+        paintImmediately(r);
+      }
+    }
   }
 
   void passFrame(MapFrame f) {
@@ -879,15 +889,18 @@ public class MapPanel extends JPanel {
   }
 
   void passPolys(List<MapPoly> p) {
-    continents = p;
+    layerCache.getLayers().setContinents(p);
+    layerCache.clear();
   }
 
   void passBorders(List<MapPoly> p) {
-    borders = p;
+    layerCache.getLayers().setBorders(p);
+    layerCache.clear();
   }
 
   void passRivers(List<MapPoly> p) {
-    rivers = p;
+    layerCache.getLayers().setRivers(p);
+    layerCache.clear();
   }
 
   @Override
@@ -896,8 +909,14 @@ public class MapPanel extends JPanel {
     if (offScreen == null) {
       return;
     }
-    Graphics graphics = offScreen.getGraphics();
-    graphics.setClip(0, 0, getWidth(), getHeight());
+    Graphics graphics = offScreen.createGraphics();
+    // the rest of the image is still what was painted last
+    Rectangle clip = g.getClipBounds();
+    if (clip == null) {
+      graphics.setClip(0, 0, getWidth(), getHeight());
+    } else {
+      graphics.setClip(clip);
+    }
     showLandmass(graphics);
     showTiles(graphics);
     showSelection(graphics);
@@ -912,6 +931,7 @@ public class MapPanel extends JPanel {
       g2.drawLine(getWidth() / 2 - 50, getHeight() / 2, getWidth() / 2 + 50, getHeight() / 2);
       g2.drawLine(getWidth() / 2, getHeight() / 2 - 50, getWidth() / 2, getHeight() / 2 + 50);
     }
+    graphics.dispose();
     // Draw double buffered Image
     g.drawImage(offScreen, 0, 0, this);
   }
@@ -996,11 +1016,12 @@ public class MapPanel extends JPanel {
     terraMaster.getProps().setProperty(TerraMasterProperties.FROM_METRES, java.lang.Double.toString(fromMetres));
   }
 
-  private boolean hasAllDirs(TileData t) {
-    boolean ret = true;
+  /** The directories a tile needs to be complete, see {@link TileData#maskOf}. */
+  private long requiredDirs() {
+    long required = 0;
     for (TerraSyncRootDirectoryType value : TerraSyncRootDirectoryType.values()) {
-      ret = ret && t.hasAllDirTypes(value, terraMaster.getSyncTypes(value));
+      required |= TileData.maskOf(value, terraMaster.getSyncTypes(value));
     }
-    return ret;
+    return required;
   }
 }
@@ -0,0 +1,96 @@
+package org.flightgear.terramaster;
+
+import java.awt.geom.AffineTransform;
+
+import com.jhlabs.map.proj.OrthographicAzimuthalProjection;
+import com.jhlabs.map.proj.Projection;
+import com.jhlabs.map.proj.WinkelTripelProjection;
+
+/**
+ * The state that decides where a point ends up on the map: projection, centre, zoom and size of
+ * the panel. Whatever was projected for one view can be reused as long as the view is equal, it
+ * is the key of the layer images in {@link MapLayerCache}.
+ */
+final class MapView {
+  final boolean winkel;
+  /** Centre in radians, latitude positive to the south like in {@link MapPanel} */
+  final double latitude;
+  final double longitude;
+  final double fromMetres;
+  final int width;
+  final int height;
+
+  MapView(boolean winkel, double latitude, double longitude, double fromMetres, int width, int height) {
+    this.winkel = winkel;
+    this.latitude = latitude;
+    this.longitude = longitude;
+    this.fromMetres = fromMetres;
+    this.width = width;
+    this.height = height;
+  }
+
+  /** True if the view projects the points like this one, whatever the size of the panel */
+  boolean isProjection(boolean winkel, double latitude, double longitude, double fromMetres) {
+    return this.winkel == winkel && Double.compare(this.latitude, latitude) == 0
+        && Double.compare(this.longitude, longitude) == 0 && Double.compare(this.fromMetres, fromMetres) == 0;
+  }
+
+  /** How far from the centre points are visible, in radians */
+  double getMapRadius() {
+    return winkel ? MapPanel.TWOPI : MapPanel.HALFPI - 0.1;
+  }
+
+  /**
+   * A new projection for the view. Projections aren't thread safe, each painter needs its own.
+   */
+  Projection createProjection() {
+    Projection pj = winkel ? new WinkelTripelProjection() : new OrthographicAzimuthalProjection();
+    pj.setProjectionLatitude(latitude);
+    pj.setProjectionLongitude(longitude);
+    pj.setFromMetres(Math.pow(2, fromMetres / 4));
+    pj.initialize();
+    return pj;
+  }
+
+  /**
+   * From projected coordinates to the pixels of the panel.
+   */
+  AffineTransform createTransform(Projection pj) {
+    double scale = Math.min(width, height) / pj.getEquatorRadius() / 2;
+    AffineTransform affine = new AffineTransform();
+    affine.translate(width / 2.0, height / 2.0);
+    affine.scale(scale, scale);
+    return affine;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = Boolean.hashCode(winkel);
+    result = 31 * result + Double.hashCode(latitude);
+    result = 31 * result + Double.hashCode(longitude);
+    result = 31 * result + Double.hashCode(fromMetres);
+    result = 31 * result + width;
+    return 31 * result + height;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof MapView)) {
+      return false;
+    }
+    MapView other = (MapView) obj;
+    return winkel == other.winkel && Double.compare(latitude, other.latitude) == 0
+        && Double.compare(longitude, other.longitude) == 0
+        && Double.compare(fromMetres, other.fromMetres) == 0 && width == other.width
+        && height == other.height;
+  }
+
+  @Override
+  public String toString() {
+    return (winkel ? "Winkel " : "Ortho ") + Math.toDegrees(longitude) + "," + -Math.toDegrees(latitude) + " zoom "
+        + fromMetres + " " + width + "x" + height;
+  }
+}
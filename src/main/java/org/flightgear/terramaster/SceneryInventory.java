@@ -0,0 +1,533 @@
+package org.flightgear.terramaster;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * The tiles installed in the scenery roots. The roots are scanned once, after that the
+ * directories down to the 10x10 blocks are watched and whatever terrasync, the user or we change
+ * is applied to the map as it happens. A block is watched before it is listed, so a tile created
+ * right after the block shows up either way.
+ */
+public class SceneryInventory implements Runnable {
+
+  private static final Logger LOG = Logger.getLogger(TerraMaster.LOGGER_CATEGORY);
+
+  /** 10x10 block directories */
+  private static final Pattern BLOCK = Pattern.compile(TileName.TILENAME_PATTERN);
+  /** 1x1 tile directories or their zips */
+  private static final Pattern TILE = Pattern.compile(TileName.TILENAME_PATTERN + "(.zip)?");
+  private static final DirectoryStream.Filter<Path> BLOCK_FILTER = p -> BLOCK
+      .matcher(p.getFileName().toString()).matches();
+  private static final DirectoryStream.Filter<Path> TILE_FILTER = p -> TILE
+      .matcher(p.getFileName().toString()).matches();
+
+  /** The folders are scanned in parallel, I/O bound so more than the cores */
+  private static final int SCAN_THREADS = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+  /** How often a running scan shows what it found so far */
+  private static final long PUBLISH_INTERVAL = 200;
+
+  /** What a watched directory contains. */
+  private enum Depth {
+    /** The tile types */
+    ROOT,
+    /** 10x10 blocks */
+    TYPE,
+    /** 1x1 tiles */
+    BLOCK
+  }
+
+  private static final class Watched {
+    final Depth depth;
+    final TerraSyncRootDirectoryType rootType;
+    final TerraSyncDirectoryType type;
+    final Path dir;
+
+    Watched(Depth depth, TerraSyncRootDirectoryType rootType, TerraSyncDirectoryType type, Path dir) {
+      this.depth = depth;
+      this.rootType = rootType;
+      this.type = type;
+      this.dir = dir;
+    }
+  }
+
+  private final Map<TerraSyncRootDirectoryType, Path> roots;
+  private final Map<TileName, TileData> map = new TileStore();
+  private final Runnable listener;
+  /** A directory can be watched for several roots if they share a folder. */
+  private final Map<WatchKey, List<Watched>> keys = new HashMap<>();
+  private WatchService watcher;
+  private volatile boolean closed;
+  private final AtomicLong lastPublished = new AtomicLong();
+  /** What the map was restored from while the first scan revalidates it */
+  private volatile InventorySnapshot snapshot;
+  /**
+   * The modification times of the folders the map is current with, read before they were listed.
+   * Dropped when an event changes the folder, such a folder is listed again at the next start.
+   */
+  private final Map<Long, Long> listed = new ConcurrentHashMap<>();
+
+  public SceneryInventory(Map<TerraSyncRootDirectoryType, Path> roots) {
+    this(roots, () -> {
+    });
+  }
+
+  /**
+   * @param listener called after a batch of changes was applied to the map
+   */
+  public SceneryInventory(Map<TerraSyncRootDirectoryType, Path> roots, Runnable listener) {
+    this.roots = Collections.unmodifiableMap(new HashMap<>(roots));
+    this.listener = listener;
+  }
+
+  public Map<TerraSyncRootDirectoryType, Path> getRoots() {
+    return roots;
+  }
+
+  /** The live map of the tiles. Safe to read while it is updated. */
+  public Map<TileName, TileData> getMap() {
+    return map;
+  }
+
+  /**
+   * Builds the map and keeps watching the roots on a daemon thread.
+   */
+  public void start() throws IOException {
+    start(null);
+  }
+
+  /**
+   * Fills the map from the snapshot, if it was taken of the same roots, and tells the listener right
+   * away. The scan then only lists the folders modified since the snapshot was taken.
+   */
+  public void start(InventorySnapshot snapshot) throws IOException {
+    restore(snapshot);
+    watcher = FileSystems.getDefault().newWatchService();
+    scan();
+    Thread thread = new Thread(this, "Scenery watcher");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private void restore(InventorySnapshot snapshot) {
+    if (snapshot == null || !snapshot.getRoots().equals(roots)) {
+      return;
+    }
+    long start = System.currentTimeMillis();
+    snapshot.restore(map);
+    this.snapshot = snapshot;
+    LOG.fine(() -> "Restored " + map.size() + " tiles in " + (System.currentTimeMillis() - start) + " ms");
+    listener.run();
+  }
+
+  /** A snapshot of the map as it is now. */
+  public InventorySnapshot snapshot() {
+    return InventorySnapshot.of(roots, map, listed);
+  }
+
+  /**
+   * Scans all roots, the 10x10 blocks in parallel. The map can be read while it fills up, the
+   * listener is told as blocks finish. Directories found are watched if the inventory was started.
+   */
+  public void scan() {
+    ExecutorService pool = Executors.newFixedThreadPool(SCAN_THREADS, r -> {
+      Thread t = new Thread(r, "Scenery scan");
+      t.setDaemon(true);
+      return t;
+    });
+    // the type tasks queue their blocks before they finish
+    Queue<Future<?>> pending = new ConcurrentLinkedQueue<>();
+    Consumer<Runnable> parallel = r -> pending.add(pool.submit(r));
+    try {
+      for (Map.Entry<TerraSyncRootDirectoryType, Path> root : roots.entrySet()) {
+        boolean exists = Files.isDirectory(root.getValue());
+        if (exists) {
+          watch(Depth.ROOT, root.getKey(), null, root.getValue());
+        }
+        for (TerraSyncDirectoryType type : TerraSyncDirectoryType.values()) {
+          if (type.isTile()) {
+            Path dir = root.getValue().resolve(type.getDirname());
+            if (exists) {
+              parallel.accept(() -> scanType(root.getKey(), type, dir, parallel));
+            } else {
+              forget(root.getKey(), type, dir);
+            }
+          }
+        }
+      }
+      Future<?> f;
+      while ((f = pending.poll()) != null) {
+        try {
+          f.get();
+        } catch (ExecutionException e) {
+          LOG.log(Level.WARNING, "Scenery scan failed", e.getCause());
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      pool.shutdownNow();
+    }
+    // from now on the watcher keeps the map current
+    snapshot = null;
+    listener.run();
+  }
+
+  public void close() {
+    closed = true;
+    if (watcher != null) {
+      try {
+        watcher.close();
+      } catch (IOException e) {
+        LOG.log(Level.FINE, "Closing watcher", e);
+      }
+    }
+  }
+
+  @Override
+  public void run() {
+    try {
+      while (!closed) {
+        WatchKey key = watcher.take();
+        // a synced tile comes as a burst of events, repaint once for all
+        do {
+          process(key);
+        } while ((key = watcher.poll()) != null);
+        listener.run();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ClosedWatchServiceException e) {
+      LOG.fine("Scenery watcher closed");
+    }
+  }
+
+  private void process(WatchKey key) {
+    List<Watched> watched;
+    synchronized (keys) {
+      watched = keys.get(key);
+    }
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (watched == null) {
+        continue;
+      }
+      for (Watched w : watched) {
+        if (w.depth != Depth.ROOT) {
+          listed.remove(key(w));
+        }
+        if (event.kind() == OVERFLOW) {
+          rescan(w);
+        } else if (event.kind() == ENTRY_CREATE) {
+          created(w, w.dir.resolve((Path) event.context()));
+        } else if (event.kind() == ENTRY_DELETE) {
+          deleted(w, w.dir.resolve((Path) event.context()));
+        }
+      }
+    }
+    if (!key.reset()) {
+      // the directory is gone
+      synchronized (keys) {
+        keys.remove(key);
+      }
+    }
+  }
+
+  private void created(Watched w, Path child) {
+    String name = child.getFileName().toString();
+    switch (w.depth) {
+      case ROOT:
+        TerraSyncDirectoryType type = getTileType(name);
+        if (type != null) {
+          scanType(w.rootType, type, child, Runnable::run);
+        }
+        break;
+      case TYPE:
+        if (BLOCK.matcher(name).matches()) {
+          scanBlock(w.rootType, w.type, child);
+        }
+        break;
+      case BLOCK:
+        if (TILE.matcher(name).matches()) {
+          addTile(w.rootType, w.type, child);
+        }
+        break;
+    }
+  }
+
+  private void deleted(Watched w, Path child) {
+    String name = child.getFileName().toString();
+    switch (w.depth) {
+      case ROOT:
+        TerraSyncDirectoryType type = getTileType(name);
+        if (type != null) {
+          removeUnder(w.rootType, type, child);
+        }
+        break;
+      case TYPE:
+        if (BLOCK.matcher(name).matches()) {
+          removeUnder(w.rootType, w.type, child);
+        }
+        break;
+      case BLOCK:
+        if (TILE.matcher(name).matches()) {
+          removeTile(w.rootType, w.type, child);
+        }
+        break;
+    }
+  }
+
+  /** Events were lost, compare the directory with the map again. */
+  private void rescan(Watched w) {
+    if (w.depth == Depth.ROOT) {
+      for (TerraSyncDirectoryType type : TerraSyncDirectoryType.values()) {
+        if (type.isTile()) {
+          Path dir = w.dir.resolve(type.getDirname());
+          removeMissing(w.rootType, type, dir);
+          scanType(w.rootType, type, dir, Runnable::run);
+        }
+      }
+    } else {
+      removeMissing(w.rootType, w.type, w.dir);
+      if (w.depth == Depth.TYPE) {
+        scanType(w.rootType, w.type, w.dir, Runnable::run);
+      } else {
+        scanBlock(w.rootType, w.type, w.dir);
+      }
+    }
+  }
+
+  /** The key of a watched type or block folder in {@link #listed}. */
+  private static long key(Watched w) {
+    int block = w.depth == Depth.BLOCK ? InventorySnapshot.encode(w.dir.getFileName().toString())
+        : InventorySnapshot.NO_BLOCK;
+    return InventorySnapshot.key(w.rootType, w.type, block);
+  }
+
+  private TerraSyncDirectoryType getTileType(String dirname) {
+    for (TerraSyncDirectoryType type : TerraSyncDirectoryType.values()) {
+      if (type.isTile() && type.getDirname().equals(dirname)) {
+        return type;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Scans the 10x10 blocks of a tile type.
+   *
+   * @param executor runs the scan of each block
+   */
+  private void scanType(TerraSyncRootDirectoryType rootType, TerraSyncDirectoryType type, Path dir,
+      Consumer<Runnable> executor) {
+    if (!Files.isDirectory(dir)) {
+      forget(rootType, type, dir);
+      return;
+    }
+    long modified = InventorySnapshot.modified(dir);
+    watch(Depth.TYPE, rootType, type, dir);
+    InventorySnapshot restored = snapshot;
+    Set<String> found = new HashSet<>();
+    try (DirectoryStream<Path> blocks = Files.newDirectoryStream(dir, BLOCK_FILTER)) {
+      for (Path block : blocks) {
+        found.add(block.getFileName().toString());
+        int code = InventorySnapshot.encode(block.getFileName().toString());
+        if (restored != null && restored.isCurrent(rootType, type, code, block)) {
+          // the restored tiles are still there
+          watch(Depth.BLOCK, rootType, type, block);
+          listed.put(InventorySnapshot.key(rootType, type, code), restored.get(rootType, type, code).modified);
+          continue;
+        }
+        executor.accept(() -> {
+          if (restored != null) {
+            removeRestored(restored, rootType, type, block, f -> !f.exists());
+          }
+          scanBlock(rootType, type, block);
+          publish();
+        });
+      }
+      listed.put(InventorySnapshot.key(rootType, type, InventorySnapshot.NO_BLOCK), modified);
+    } catch (IOException e) {
+      LOG.log(Level.WARNING, "Couldn't scan " + dir, e);
+    }
+    if (restored != null) {
+      // blocks that are gone
+      forget(rootType, type, dir, found);
+    }
+  }
+
+  /** Removes the restored tiles of a tile type folder that is gone. */
+  private void forget(TerraSyncRootDirectoryType rootType, TerraSyncDirectoryType type, Path dir) {
+    forget(rootType, type, dir, Collections.emptySet());
+  }
+
+  /** Removes the restored tiles of the blocks that aren't in <code>found</code>. */
+  private void forget(TerraSyncRootDirectoryType rootType, TerraSyncDirectoryType type, Path dir,
+      Set<String> found) {
+    InventorySnapshot restored = snapshot;
+    InventorySnapshot.Dir typeDir = restored == null ? null
+        : restored.get(rootType, type, InventorySnapshot.NO_BLOCK);
+    if (typeDir == null) {
+      return;
+    }
+    for (int block : typeDir.entries) {
+      String name = InventorySnapshot.decode(block);
+      if (!found.contains(name)) {
+        removeRestored(restored, rootType, type, dir.resolve(name), f -> true);
+      }
+    }
+  }
+
+  /**
+   * Removes the type from the tiles the snapshot had in the block if their file matches. Only
+   * those tiles are looked at, not the whole map.
+   */
+  private void removeRestored(InventorySnapshot restored, TerraSyncRootDirectoryType rootType,
+      TerraSyncDirectoryType type, Path block, Predicate<File> matches) {
+    InventorySnapshot.Dir blockDir = restored.get(rootType, type,
+        InventorySnapshot.encode(block.getFileName().toString()));
+    if (blockDir == null) {
+      return;
+    }
+    for (int code : blockDir.entries) {
+      TileName tile = TileName.getTile(code >>> 1);
+      remove(tile, rootType, type, f -> f.toPath().startsWith(block) && matches.test(f));
+    }
+  }
+
+  /** Tells the listener about a finished block, at most every {@link #PUBLISH_INTERVAL} ms. */
+  private void publish() {
+    long now = System.currentTimeMillis();
+    long last = lastPublished.get();
+    if (now - last >= PUBLISH_INTERVAL && lastPublished.compareAndSet(last, now)) {
+      listener.run();
+    }
+  }
+
+  private void scanBlock(TerraSyncRootDirectoryType rootType, TerraSyncDirectoryType type, Path dir) {
+    if (!Files.isDirectory(dir)) {
+      return;
+    }
+    long modified = InventorySnapshot.modified(dir);
+    // first watch, then list: a tile created in between is seen twice rather than not at all
+    watch(Depth.BLOCK, rootType, type, dir);
+    try (DirectoryStream<Path> tiles = Files.newDirectoryStream(dir, TILE_FILTER)) {
+      for (Path tile : tiles) {
+        addTile(rootType, type, tile);
+      }
+      listed.put(InventorySnapshot.key(rootType, type, InventorySnapshot.encode(dir.getFileName().toString())),
+          modified);
+    } catch (IOException e) {
+      LOG.log(Level.WARNING, "Couldn't scan " + dir, e);
+    }
+  }
+
+  private void watch(Depth depth, TerraSyncRootDirectoryType rootType, TerraSyncDirectoryType type, Path dir) {
+    if (watcher == null) {
+      return;
+    }
+    try {
+      WatchKey key = dir.register(watcher, ENTRY_CREATE, ENTRY_DELETE);
+      synchronized (keys) {
+        List<Watched> watched = keys.computeIfAbsent(key, k -> new ArrayList<>(1));
+        for (Watched w : watched) {
+          if (w.rootType == rootType && w.type == type) {
+            return;
+          }
+        }
+        watched.add(new Watched(depth, rootType, type, dir));
+      }
+    } catch (IOException | ClosedWatchServiceException e) {
+      LOG.log(Level.WARNING, "Couldn't watch " + dir, e);
+    }
+  }
+
+  private void addTile(TerraSyncRootDirectoryType rootType, TerraSyncDirectoryType type, Path file) {
+    add(map, TileName.getTile(file.getFileName().toString().replace(".zip", "")), rootType, type,
+        file.toFile());
+  }
+
+  /**
+   * Records that the tile has the type in the root.
+   */
+  static void add(Map<TileName, TileData> map, TileName tile, TerraSyncRootDirectoryType rootType,
+      TerraSyncDirectoryType type, File file) {
+    if (tile == null) {
+      return;
+    }
+    // the scan threads, the sync workers and the watcher report at once, compute is atomic per tile
+    map.compute(tile, (k, t) -> {
+      if (t == null) {
+        t = new TileData();
+      }
+      t.setDirTypePath(rootType, type, file);
+      return t.isEmpty() ? null : t;
+    });
+  }
+
+  private void removeTile(TerraSyncRootDirectoryType rootType, TerraSyncDirectoryType type, Path file) {
+    TileName tile = TileName.getTile(file.getFileName().toString().replace(".zip", ""));
+    if (tile != null) {
+      remove(tile, rootType, type, f -> f.equals(file.toFile()));
+    }
+  }
+
+  /** Removes the type from all tiles below the directory. */
+  private void removeUnder(TerraSyncRootDirectoryType rootType, TerraSyncDirectoryType type, Path dir) {
+    for (TileName tile : map.keySet()) {
+      remove(tile, rootType, type, f -> f.toPath().startsWith(dir));
+    }
+  }
+
+  /** Removes the type from the tiles below the directory that don't exist anymore. */
+  private void removeMissing(TerraSyncRootDirectoryType rootType, TerraSyncDirectoryType type, Path dir) {
+    for (TileName tile : map.keySet()) {
+      remove(tile, rootType, type, f -> f.toPath().startsWith(dir) && !f.exists());
+    }
+  }
+
+  /**
+   * Removes the type from the tile if its directory matches. Tiles left empty are dropped.
+   */
+  private void remove(TileName tile, TerraSyncRootDirectoryType rootType, TerraSyncDirectoryType type,
+      Predicate<File> matches) {
+    map.computeIfPresent(tile, (k, t) -> {
+      File f = t.getDir(rootType, type);
+      if (f != null && matches.test(f)) {
+        t.removeDirType(rootType, type);
+      }
+      return t.isEmpty() ? null : t;
+    });
+  }
+}
@@ -30,6 +30,8 @@ public class SettingsDialog extends JDialog {
   private final JComboBox<Level> cmbLogLevel;
   private Logger root;
   private final JTextField tileage;
+  private final JTextField syncThreads;
+  private final JTextField dirIndexTtl;
   private final TerraMaster terraMaster;
   private String[] directories = new String[0];
   private final JButton okButton;
@@ -50,16 +52,16 @@ public class SettingsDialog extends JDialog {
     this.terraMaster = terraMaster;
     setTitle("Settings");
     setModal(true);
-    setBounds(100, 100, 466, 280);
+    setBounds(100, 100, 466, 310);
     getContentPane().setLayout(new BorderLayout());
     JPanel contentPanel = new JPanel();
     contentPanel.setBorder(new EmptyBorder(5, 5, 5, 5));
     getContentPane().add(contentPanel, BorderLayout.CENTER);
     GridBagLayout gbl_contentPanel = new GridBagLayout();
     gbl_contentPanel.columnWidths = new int[]{0, 0, 40, 0};
-    gbl_contentPanel.rowHeights = new int[]{0, 0, 0, 0, 0, 0};
+    gbl_contentPanel.rowHeights = new int[]{0, 0, 0, 0, 0, 0, 0, 0};
     gbl_contentPanel.columnWeights = new double[]{0.0, 1.0, 1.0, Double.MIN_VALUE};
-    gbl_contentPanel.rowWeights = new double[]{0.0, 0.0, 0.0, 0.0, 0.0, 0.0};
+    gbl_contentPanel.rowWeights = new double[]{0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0};
     contentPanel.setLayout(gbl_contentPanel);
     {
       JPanel buttonPane = new JPanel();
@@ -156,6 +158,52 @@ public class SettingsDialog extends JDialog {
       gbc_lblDays.gridy = 4;
       contentPanel.add(lblDays, gbc_lblDays);
     }
+    {
+      JLabel lblSyncThreads = new JLabel("parallel downloads");
+      GridBagConstraints gbc_lblSyncThreads = new GridBagConstraints();
+      gbc_lblSyncThreads.insets = new Insets(0, 0, 5, 5);
+      gbc_lblSyncThreads.anchor = GridBagConstraints.EAST;
+      gbc_lblSyncThreads.gridx = 0;
+      gbc_lblSyncThreads.gridy = 5;
+      contentPanel.add(lblSyncThreads, gbc_lblSyncThreads);
+    }
+    {
+      syncThreads = new JTextField();
+      GridBagConstraints gbc_syncThreads = new GridBagConstraints();
+      gbc_syncThreads.insets = new Insets(0, 0, 5, 5);
+      gbc_syncThreads.fill = GridBagConstraints.HORIZONTAL;
+      gbc_syncThreads.gridx = 1;
+      gbc_syncThreads.gridy = 5;
+      contentPanel.add(syncThreads, gbc_syncThreads);
+      syncThreads.setColumns(10);
+    }
+    {
+      JLabel lblDirIndexTtl = new JLabel("trust checked directories");
+      GridBagConstraints gbc_lblDirIndexTtl = new GridBagConstraints();
+      gbc_lblDirIndexTtl.insets = new Insets(0, 0, 5, 5);
+      gbc_lblDirIndexTtl.anchor = GridBagConstraints.EAST;
+      gbc_lblDirIndexTtl.gridx = 0;
+      gbc_lblDirIndexTtl.gridy = 6;
+      contentPanel.add(lblDirIndexTtl, gbc_lblDirIndexTtl);
+    }
+    {
+      dirIndexTtl = new JTextField();
+      GridBagConstraints gbc_dirIndexTtl = new GridBagConstraints();
+      gbc_dirIndexTtl.insets = new Insets(0, 0, 5, 5);
+      gbc_dirIndexTtl.fill = GridBagConstraints.HORIZONTAL;
+      gbc_dirIndexTtl.gridx = 1;
+      gbc_dirIndexTtl.gridy = 6;
+      contentPanel.add(dirIndexTtl, gbc_dirIndexTtl);
+      dirIndexTtl.setColumns(10);
+    }
+    {
+      JLabel lblMinutes = new JLabel("minutes");
+      GridBagConstraints gbc_lblMinutes = new GridBagConstraints();
+      gbc_lblMinutes.insets = new Insets(0, 0, 5, 0);
+      gbc_lblMinutes.gridx = 2;
+      gbc_lblMinutes.gridy = 6;
+      contentPanel.add(lblMinutes, gbc_lblMinutes);
+    }
     restoreValues();
     {
       new Thread(() -> {
@@ -222,6 +270,10 @@ public class SettingsDialog extends JDialog {
     tileage
             .setText("" + (Integer.parseInt(terraMaster.getProps().getProperty(TerraMasterProperties.MAX_TILE_AGE, "100"))
                     / (24 * 3600)));
+    syncThreads.setText(terraMaster.getProps().getProperty(TerraMasterProperties.SYNC_THREADS,
+            Integer.toString(HTTPTerraSync.DEFAULT_SYNC_THREADS)));
+    dirIndexTtl.setText(terraMaster.getProps().getProperty(TerraMasterProperties.DIRINDEX_TTL,
+            Long.toString(DirIndexCache.DEFAULT_TTL_MINUTES)));
   }
 
   private void saveValues() {
@@ -234,12 +286,16 @@ public class SettingsDialog extends JDialog {
       });
 
 
-//      terraMaster.setMapScenery(terraMaster.getTileService().newScnMap(txtScenerypath.getText()));
+      terraMaster.checkSceneryRoots();
       terraMaster.frame.map.repaint();
 //      terraMaster.getProps().setProperty(TerraMasterProperties.SCENERY_PATH, txtScenerypath.getText());
 //      terraMaster.getTileService().setScnPath(new File(txtScenerypath.getText()));
       terraMaster.getProps().setProperty(TerraMasterProperties.MAX_TILE_AGE,
               "" + (Integer.parseInt(tileage.getText()) * 24 * 3600));
+      terraMaster.getProps().setProperty(TerraMasterProperties.SYNC_THREADS,
+              "" + Math.max(1, Integer.parseInt(syncThreads.getText().trim())));
+      terraMaster.getProps().setProperty(TerraMasterProperties.DIRINDEX_TTL,
+              "" + Math.max(0, Long.parseLong(dirIndexTtl.getText().trim())));
       terraMaster.setTileService();
     } catch (Exception x) {
       log.log(Level.WARNING, x.toString(), x);
@@ -0,0 +1,70 @@
+package org.flightgear.terramaster;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * Decides which {@link Syncable} in the {@link SyncQueue} is fetched first. The priority is
+ * taken once when the Syncable is queued, lower values come first. Shared data (models,
+ * airports) isn't a tile and always goes before the tiles.
+ */
+@FunctionalInterface
+public interface SyncOrder {
+
+  /** The order the Syncables were queued in. */
+  SyncOrder FIFO = s -> 0;
+
+  double priority(Syncable syncable);
+
+  /**
+   * Tiles closest to the given point first.
+   */
+  static SyncOrder byDistance(double lat, double lon) {
+    final double sinLat = Math.sin(Math.toRadians(lat));
+    final double cosLat = Math.cos(Math.toRadians(lat));
+    final double lonRad = Math.toRadians(lon);
+    return s -> {
+      if (!(s instanceof TileName)) {
+        return -1;
+      }
+      TileName t = (TileName) s;
+      // centre of the tile
+      double tLat = Math.toRadians(t.getLat() + 0.5);
+      double tLon = Math.toRadians(t.getLon() + 0.5);
+      double cos = sinLat * Math.sin(tLat) + cosLat * Math.cos(tLat) * Math.cos(tLon - lonRad);
+      return Math.acos(Math.max(-1, Math.min(1, cos)));
+    };
+  }
+
+  /**
+   * Tiles in the order they are passed on the route, everything else after them.
+   */
+  static SyncOrder byRoute(List<TileName> route) {
+    final Map<TileName, Integer> index = new HashMap<>(route.size() * 2);
+    for (int i = route.size() - 1; i >= 0; i--) {
+      index.put(route.get(i), i);
+    }
+    return s -> {
+      if (!(s instanceof TileName)) {
+        return -1;
+      }
+      return index.getOrDefault(s, route.size());
+    };
+  }
+
+  /**
+   * Tiles that were synced longest ago first.
+   *
+   * @param lastSynced the time in ms the tile was last synced, 0 if never
+   */
+  static SyncOrder byAge(ToLongFunction<TileName> lastSynced) {
+    return s -> {
+      if (!(s instanceof TileName)) {
+        return -1;
+      }
+      return lastSynced.applyAsLong((TileName) s);
+    };
+  }
+}
@@ -0,0 +1,127 @@
+package org.flightgear.terramaster;
+
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+import javax.swing.Timer;
+
+/**
+ * The progress of a sync on its way to the progress bar. The sync threads report as often as they
+ * like, the reports are added up and handed to the receiver on the EDT at most every
+ * {@link #FRAME_INTERVAL} ms, so a sync of many small files doesn't flood the event queue.
+ */
+final class SyncProgress {
+
+  /** How often the receiver is told at most, in ms */
+  static final int FRAME_INTERVAL = 100;
+
+  /** Runs a task once after a delay. */
+  @FunctionalInterface
+  interface Scheduler {
+    void schedule(int delay, Runnable task);
+  }
+
+  /** What was reported since the receiver was told last. */
+  static final class Update {
+    private boolean finished;
+    private boolean started;
+    private int extended;
+    private int done;
+
+    /** The sync ended, everything else happened after that */
+    boolean isFinished() {
+      return finished;
+    }
+
+    /** A sync started */
+    boolean isStarted() {
+      return started;
+    }
+
+    /** How much the maximum grew */
+    int getExtended() {
+      return extended;
+    }
+
+    /** How much was done */
+    int getDone() {
+      return done;
+    }
+  }
+
+  private final Consumer<Update> receiver;
+  private final LongSupplier clock;
+  private final Scheduler scheduler;
+  /** What the receiver hasn't seen yet, null if nothing */
+  private Update pending;
+  private long lastDelivered;
+
+  /**
+   * @param receiver called on the EDT
+   */
+  SyncProgress(Consumer<Update> receiver) {
+    this(receiver, System::currentTimeMillis, SyncProgress::startTimer);
+  }
+
+  /**
+   * @param clock the time in ms
+   * @param scheduler runs the delivery to the receiver
+   */
+  SyncProgress(Consumer<Update> receiver, LongSupplier clock, Scheduler scheduler) {
+    this.receiver = receiver;
+    this.clock = clock;
+    this.scheduler = scheduler;
+  }
+
+  /** Runs the task on the EDT */
+  private static void startTimer(int delay, Runnable task) {
+    Timer timer = new Timer(delay, e -> task.run());
+    timer.setRepeats(false);
+    timer.start();
+  }
+
+  /** A sync starts with the maximum */
+  synchronized void start(int maximum) {
+    Update update = pending();
+    update.started = true;
+    update.extended += maximum;
+  }
+
+  synchronized void extend(int n) {
+    pending().extended += n;
+  }
+
+  synchronized void done(int n) {
+    pending().done += n;
+  }
+
+  /** The sync ended, what was reported before doesn't matter anymore. */
+  synchronized void finish() {
+    Update update = pending();
+    update.finished = true;
+    update.started = false;
+    update.extended = 0;
+    update.done = 0;
+  }
+
+  private Update pending() {
+    if (pending == null) {
+      pending = new Update();
+      long delay = Math.max(0, lastDelivered + FRAME_INTERVAL - clock.getAsLong());
+      scheduler.schedule((int) delay, this::deliver);
+    }
+    return pending;
+  }
+
+  private void deliver() {
+    Update update;
+    synchronized (this) {
+      update = pending;
+      pending = null;
+      lastDelivered = clock.getAsLong();
+    }
+    if (update != null) {
+      receiver.accept(update);
+    }
+  }
+}
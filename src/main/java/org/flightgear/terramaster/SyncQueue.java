@@ -0,0 +1,186 @@
+package org.flightgear.terramaster;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+/**
+ * The Syncables waiting to be synced. Every Syncable is only queued once, the order is given
+ * by a pluggable {@link SyncOrder}. Adding and removing are O(log n), readers get an
+ * immutable snapshot that is only rebuilt after the queue changed.
+ */
+public class SyncQueue {
+
+  /**
+   * A queued Syncable as it was handed out by {@link #firstEntry(Predicate)}. Removing it
+   * leaves the Syncable queued if it was added again in the meantime.
+   */
+  public static final class Entry {
+    private final Syncable syncable;
+    private final long version;
+
+    private Entry(Syncable syncable, long version) {
+      this.syncable = syncable;
+      this.version = version;
+    }
+
+    public Syncable getSyncable() {
+      return syncable;
+    }
+  }
+
+  private static final class Node implements Comparable<Node> {
+    Syncable syncable;
+    final double priority;
+    final long sequence;
+    /** Changes with every add of the Syncable */
+    long version;
+
+    Node(Syncable syncable, double priority, long sequence, long version) {
+      this.syncable = syncable;
+      this.priority = priority;
+      this.sequence = sequence;
+      this.version = version;
+    }
+
+    @Override
+    public int compareTo(Node o) {
+      int c = Double.compare(priority, o.priority);
+      return c != 0 ? c : Long.compare(sequence, o.sequence);
+    }
+  }
+
+  private final TreeSet<Node> queue = new TreeSet<>();
+  private final Map<Syncable, Node> nodes = new HashMap<>();
+  private SyncOrder order = SyncOrder.FIFO;
+  private long sequence;
+  private long versions;
+  private List<Syncable> snapshot = Collections.emptyList();
+  private boolean changed;
+
+  public synchronized SyncOrder getOrder() {
+    return order;
+  }
+
+  /**
+   * Changes the order. Everything queued is sorted again.
+   */
+  public synchronized void setOrder(SyncOrder order) {
+    this.order = order;
+    List<Node> old = new ArrayList<>(queue);
+    queue.clear();
+    nodes.clear();
+    for (Node node : old) {
+      Node n = new Node(node.syncable, order.priority(node.syncable), node.sequence, node.version);
+      queue.add(n);
+      nodes.put(n.syncable, n);
+    }
+    changed = true;
+  }
+
+  /**
+   * Queues the Syncable. If it is already queued it keeps its place but the new instance
+   * (with its types) is used.
+   *
+   * @return true if it wasn't queued before
+   */
+  public synchronized boolean add(Syncable syncable) {
+    Node node = nodes.get(syncable);
+    changed = true;
+    if (node != null) {
+      node.syncable = syncable;
+      node.version = versions++;
+      return false;
+    }
+    node = new Node(syncable, order.priority(syncable), sequence++, versions++);
+    queue.add(node);
+    nodes.put(syncable, node);
+    return true;
+  }
+
+  /**
+   * The most important Syncable that isn't skipped. It stays in the queue.
+   *
+   * @return the Syncable or <code>null</code> if there is none
+   */
+  public synchronized Syncable first(Predicate<Syncable> skip) {
+    Entry entry = firstEntry(skip);
+    return entry == null ? null : entry.syncable;
+  }
+
+  /**
+   * Like {@link #first(Predicate)}, for a worker that removes the Syncable with
+   * {@link #remove(Entry)} once it is done.
+   *
+   * @return the entry or <code>null</code> if there is none
+   */
+  public synchronized Entry firstEntry(Predicate<Syncable> skip) {
+    for (Node node : queue) {
+      if (!skip.test(node.syncable)) {
+        return new Entry(node.syncable, node.version);
+      }
+    }
+    return null;
+  }
+
+  public synchronized boolean remove(Syncable syncable) {
+    Node node = nodes.remove(syncable);
+    if (node == null) {
+      return false;
+    }
+    queue.remove(node);
+    changed = true;
+    return true;
+  }
+
+  /**
+   * Removes the Syncable of the entry unless it was added again after the entry was handed
+   * out. Then it stays queued to be synced once more.
+   *
+   * @return true if it was removed
+   */
+  public synchronized boolean remove(Entry entry) {
+    Node node = nodes.get(entry.syncable);
+    if (node == null || node.version != entry.version) {
+      return false;
+    }
+    return remove(entry.syncable);
+  }
+
+  public synchronized boolean contains(Syncable syncable) {
+    return nodes.containsKey(syncable);
+  }
+
+  public synchronized void clear() {
+    queue.clear();
+    nodes.clear();
+    changed = true;
+  }
+
+  public synchronized boolean isEmpty() {
+    return queue.isEmpty();
+  }
+
+  public synchronized int size() {
+    return queue.size();
+  }
+
+  /**
+   * The queued Syncables in order. The list is shared until the next change, don't modify it.
+   */
+  public synchronized List<Syncable> snapshot() {
+    if (changed) {
+      List<Syncable> list = new ArrayList<>(queue.size());
+      for (Node node : queue) {
+        list.add(node.syncable);
+      }
+      snapshot = Collections.unmodifiableList(list);
+      changed = false;
+    }
+    return snapshot;
+  }
+}
@@ -6,6 +6,8 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.Map.Entry;
 import java.util.jar.Manifest;
@@ -36,6 +38,9 @@ public class TerraMaster {
 
   private Map<TileName, TileData> mapScenery;
 
+  /** Keeps mapScenery up to date */
+  private volatile SceneryInventory inventory;
+
   /** The service getting the tiles */
   private TileService tileService;
 
@@ -58,7 +63,7 @@ public class TerraMaster {
     (new Thread() {
       @Override
       public void run() {
-        setMapScenery(tileService.newScnMap());
+        startInventory();
         SwingUtilities.invokeLater(() -> {
           if (frame != null) {
             frame.repaint();
@@ -284,6 +289,71 @@ public class TerraMaster {
     }
   }
 
+  /**
+   * The configured scenery folders.
+   */
+  public Map<TerraSyncRootDirectoryType, Path> getSceneryRoots() {
+    Map<TerraSyncRootDirectoryType, Path> roots = new EnumMap<>(TerraSyncRootDirectoryType.class);
+    for (TerraSyncRootDirectoryType rootType : TerraSyncRootDirectoryType.values()) {
+      String path = getProps().getProperty(rootType + "." + TerraMasterProperties.SCENERY_PATH);
+      if (path != null && !path.isEmpty()) {
+        roots.put(rootType, Paths.get(path));
+      }
+    }
+    return roots;
+  }
+
+  /**
+   * Restores the inventory saved on the last exit, rescans what changed in the scenery folders
+   * since and keeps watching them.
+   */
+  synchronized void startInventory() {
+    InventorySnapshot snapshot = null;
+    if (inventory != null) {
+      inventory.close();
+    } else {
+      snapshot = InventorySnapshot.load(Paths.get(InventorySnapshot.FILENAME));
+    }
+    inventory = new SceneryInventory(getSceneryRoots(), () -> {
+      if (frame != null) {
+        frame.repaint();
+      }
+    });
+    // the map fills up while the scan runs
+    setMapScenery(inventory.getMap());
+    try {
+      inventory.start(snapshot);
+    } catch (IOException e) {
+      log.log(Level.WARNING, "Can't watch the scenery folders", e);
+      inventory.scan();
+    }
+  }
+
+  /**
+   * Saves the inventory for the next start.
+   */
+  void saveInventory() {
+    SceneryInventory current = inventory;
+    if (current == null) {
+      return;
+    }
+    try {
+      current.snapshot().save(Paths.get(InventorySnapshot.FILENAME));
+    } catch (IOException e) {
+      log.log(Level.WARNING, "Couldn't save the scenery inventory", e);
+    }
+  }
+
+  /**
+   * Scans again if the scenery folders were changed.
+   */
+  void checkSceneryRoots() {
+    SceneryInventory current = inventory;
+    if (current != null && !current.getRoots().equals(getSceneryRoots())) {
+      new Thread(this::startInventory, "Scenery scan").start();
+    }
+  }
+
   public Map<TileName, TileData> getMapScenery() {
     return mapScenery;
   }
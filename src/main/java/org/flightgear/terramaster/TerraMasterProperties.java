@@ -13,6 +13,10 @@ public interface TerraMasterProperties {
   static final String DNS_GOOGLE = "DNS_Google";
   static final String DNS_GCA = "DNS_GCA";
   static final String MAX_TILE_AGE = "MaxTileAge";
+  /** Number of parallel download workers used by the sync. */
+  static final String SYNC_THREADS = "SyncThreads";
+  /** Minutes a checked .dirindex is trusted without asking the mirror again. */
+  static final String DIRINDEX_TTL = "DirIndexTTL";
   static final String SCENERY_VERSION = "SceneryVersion";
   static final String DEFAULT_SCENERY_VERSION = "ws20";
   static final String LOG_LEVEL = "LogLevel";
@@ -3,7 +3,6 @@ package org.flightgear.terramaster;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
-import java.util.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -17,56 +16,56 @@ import java.util.logging.Logger;
 
 public class TileData {
 
-  /**
-   * Compound key
-   */
-  private class TileDataKey {
-    TerraSyncRootDirectoryType rootType;
-    TerraSyncDirectoryType dirType;
-
-    public TileDataKey(TerraSyncRootDirectoryType rootType, TerraSyncDirectoryType dirType) {
-      this.rootType = rootType;
-      this.dirType = dirType;
-    }
+  private static final int TYPES = TerraSyncDirectoryType.values().length;
 
-    @Override
-    public int hashCode() {
-      int hash = 7;
-      hash = 13 * hash + Objects.hashCode(this.rootType);
-      hash = 13 * hash + Objects.hashCode(this.dirType);
-      return hash;
+  static {
+    if (TerraSyncRootDirectoryType.values().length * TYPES > Long.SIZE) {
+      throw new IllegalStateException("Too many directory types for the mask");
     }
+  }
 
-    @Override
-    public boolean equals(Object obj) {
-      if (this == obj) {
-        return true;
-      }
-      if (obj == null) {
-        return false;
+  /** For each directory type the bits of all roots it can be in. */
+  private static final long[] TYPE_MASKS = new long[TYPES];
+  static {
+    for (TerraSyncDirectoryType type : TerraSyncDirectoryType.values()) {
+      for (TerraSyncRootDirectoryType rootType : type.getRootTypes()) {
+        TYPE_MASKS[type.ordinal()] |= 1L << bit(rootType, type);
       }
-      if (getClass() != obj.getClass()) {
-        return false;
-      }
-      final TileDataKey other = (TileDataKey) obj;
-      if (this.rootType != other.rootType) {
-        return false;
-      }
-      return this.dirType == other.dirType;
     }
-
   }
-  
+
+  private static final File[] NO_DIRS = new File[0];
+
   private static final Logger log = Logger.getLogger(TerraMaster.LOGGER_CATEGORY);
-  /** Flags indicating what the tiles contain. Used for the mouse over. */
-  private final HashSet<TileDataKey> directoryTypes;
+  /** One bit per root and directory type the tile has. Used for the mouse over. */
+  private long mask;
 
-  /** Map with the File objects for the directory types. */
-  private final HashMap<TileDataKey, File> dirs;
+  /** The File objects for the set bits of the mask, in the order of the bits. */
+  private File[] dirs = NO_DIRS;
 
   public TileData() {
-    directoryTypes = new HashSet<>();
-    dirs = new HashMap<>();
+  }
+
+  private static int bit(TerraSyncRootDirectoryType rootType, TerraSyncDirectoryType type) {
+    return rootType.ordinal() * TYPES + type.ordinal();
+  }
+
+  /** Position of the bit's file in {@link #dirs}. */
+  private int index(int bit) {
+    return Long.bitCount(mask & ((1L << bit) - 1));
+  }
+
+  /**
+   * The mask a tile needs to have all of the tile types in the root, for {@link #hasAll(long)}.
+   */
+  public static long maskOf(final TerraSyncRootDirectoryType rootType, final TerraSyncDirectoryType[] dirTypes) {
+    long m = 0;
+    for (TerraSyncDirectoryType type : dirTypes) {
+      if (type.isTile()) {
+        m |= 1L << bit(rootType, type);
+      }
+    }
+    return m;
   }
 
   /**
@@ -115,35 +114,81 @@ public class TileData {
   }
 
   public synchronized boolean hasDirectory(final TerraSyncRootDirectoryType rootType, TerraSyncDirectoryType type) {
-    return directoryTypes.contains(new TileDataKey(rootType, type));
+    return (mask & (1L << bit(rootType, type))) != 0;
   }
 
   public synchronized boolean hasDirectory(final TerraSyncDirectoryType type) {
-    boolean ret = false;
-    for (TerraSyncRootDirectoryType rootType : type.getRootTypes()) {
-      ret |= directoryTypes.contains(new TileDataKey(rootType, type));
-    }
-    return ret;
+    return (mask & TYPE_MASKS[type.ordinal()]) != 0;
   }
 
   public synchronized boolean hasAllDirTypes(final TerraSyncRootDirectoryType rootType, final TerraSyncDirectoryType[] dirTypes) {
-    boolean hasAll = true;
-    for (TerraSyncDirectoryType type : dirTypes) {
-        if (type.isTile() && !hasDirectory(rootType, type)) {
-          hasAll = false;
-        }
-    }
-    return hasAll;
+    return hasAll(maskOf(rootType, dirTypes));
+  }
+
+  /**
+   * @param required built with {@link #maskOf}, several roots can be or'ed together
+   */
+  public synchronized boolean hasAll(long required) {
+    return (mask & required) == required;
   }
 
-  public void setDirTypePath(final TerraSyncRootDirectoryType rootType, TerraSyncDirectoryType type, File file) {
+  public synchronized void setDirTypePath(final TerraSyncRootDirectoryType rootType, TerraSyncDirectoryType type, File file) {
     if (file != null && file.exists()) {
-      directoryTypes.add(new TileDataKey( rootType, type));
-      dirs.put(new TileDataKey(rootType, type), file);
+      restoreDirTypePath(rootType, type, file);
+    }
+  }
+
+  /**
+   * Like {@link #setDirTypePath} but trusts the caller that the file exists.
+   */
+  public synchronized void restoreDirTypePath(final TerraSyncRootDirectoryType rootType, TerraSyncDirectoryType type, File file) {
+    int bit = bit(rootType, type);
+    int i = index(bit);
+    if ((mask & (1L << bit)) != 0) {
+      dirs[i] = file;
+      return;
     }
+    File[] grown = new File[dirs.length + 1];
+    System.arraycopy(dirs, 0, grown, 0, i);
+    System.arraycopy(dirs, i, grown, i + 1, dirs.length - i);
+    grown[i] = file;
+    dirs = grown;
+    mask |= 1L << bit;
   }
 
-  public File getDir(final TerraSyncRootDirectoryType rootType, final TerraSyncDirectoryType type) {
-    return dirs.get(new TileDataKey(rootType, type));
+  public synchronized void removeDirType(final TerraSyncRootDirectoryType rootType, TerraSyncDirectoryType type) {
+    int bit = bit(rootType, type);
+    if ((mask & (1L << bit)) == 0) {
+      return;
+    }
+    int i = index(bit);
+    File[] shrunk = dirs.length == 1 ? NO_DIRS : new File[dirs.length - 1];
+    System.arraycopy(dirs, 0, shrunk, 0, i);
+    System.arraycopy(dirs, i + 1, shrunk, i, dirs.length - i - 1);
+    dirs = shrunk;
+    mask &= ~(1L << bit);
+  }
+
+  /** True if nothing of the tile is installed. */
+  public synchronized boolean isEmpty() {
+    return mask == 0;
+  }
+
+  public synchronized File getDir(final TerraSyncRootDirectoryType rootType, final TerraSyncDirectoryType type) {
+    int bit = bit(rootType, type);
+    return (mask & (1L << bit)) != 0 ? dirs[index(bit)] : null;
+  }
+
+  /**
+   * When the tile was last synced, taken from the newest .dirindex of its directories.
+   *
+   * @return the time in ms or 0 if unknown
+   */
+  public synchronized long getLastSynced() {
+    long lastSynced = 0;
+    for (File dir : dirs) {
+      lastSynced = Math.max(lastSynced, new File(dir, ".dirindex").lastModified());
+    }
+    return lastSynced;
   }
 }
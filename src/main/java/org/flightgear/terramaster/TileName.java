@@ -4,7 +4,8 @@ import java.awt.geom.Point2D;
 import java.awt.geom.Point2D.Double;
 import java.io.Serializable;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.EnumMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
@@ -17,27 +18,20 @@ import java.util.stream.Stream;
 public class TileName extends Syncable implements Comparable<TileName>, Serializable {
 
   public static final String TILENAME_PATTERN = "([ew])(\\d{3})([ns])(\\d{2})";
+
+  /** Number of ids, one per 1x1 tile from w180s90 to e179n90. */
+  public static final int TILE_COUNT = 360 * 181;
+
   private final int lat;
   private final int lon;
   /** String representing this tile. */
   private final String name;
   
-  /**The types being synced. Not part of HashCode/Equals!*/
-  private HashMap<TerraSyncRootDirectoryType,TerraSyncDirectoryType[]>  typesMap = new HashMap<>();
-
-  private final static HashMap<String, TileName> tilenameMap;
+  /**The types being synced. Not part of HashCode/Equals! Created on the first setTypes.*/
+  private EnumMap<TerraSyncRootDirectoryType,TerraSyncDirectoryType[]>  typesMap;
 
-  // creates a hashtable of all possible 1x1 tiles in the world
-  static {
-    tilenameMap = new HashMap<>();
-
-    for (int x = -180; x < 180; ++x) {
-      for (int y = -90; y <= 90; ++y) {
-        TileName t = new TileName("---", y, x);
-        tilenameMap.put(t.getName(), t);
-      }
-    }
-  }
+  /** The shared tiles by id, created when first asked for. */
+  private static final AtomicReferenceArray<TileName> tiles = new AtomicReferenceArray<>(TILE_COUNT);
   
   /**
    * 
@@ -67,6 +61,38 @@ public class TileName extends Syncable implements Comparable<TileName>, Serializ
       lat = lon = 0;
   }
 
+  /**
+   * The id of the tile at lat, lon or -1 if there is none.
+   */
+  public static int getId(int lat, int lon) {
+    if (lat < -90 || lat > 90 || lon < -180 || lon >= 180) {
+      return -1;
+    }
+    return (lat + 90) * 360 + lon + 180;
+  }
+
+  /** The id of this tile, 0 to {@link #TILE_COUNT} - 1 */
+  public int getId() {
+    return getId(lat, lon);
+  }
+
+  /**
+   * The shared tile with the id.
+   *
+   * @return the tile or <code>null</code> if the id is out of range
+   */
+  public static TileName getTile(int id) {
+    if (id < 0 || id >= TILE_COUNT) {
+      return null;
+    }
+    TileName t = tiles.get(id);
+    if (t == null) {
+      tiles.compareAndSet(id, null, new TileName("---", id / 360 - 90, id % 360 - 180));
+      t = tiles.get(id);
+    }
+    return t;
+  }
+
   @Override
   public int compareTo(TileName l) {
     return name.compareTo(l.getName());
@@ -85,11 +111,20 @@ public class TileName extends Syncable implements Comparable<TileName>, Serializ
     return lon;
   }
 
+  /** W and S are negative */
+  private static int lat(Point2D.Double p) {
+    return (int) -Math.ceil(p.y);
+  }
+
+  private static int lon(Point2D.Double p) {
+    return (int) Math.floor(p.x);
+  }
+
   // W and S are negative
   public static String computeTileName(Point2D.Double p) {
     if (p == null)
       return "";
-    return computeTileName((int) -Math.ceil(p.y), (int) Math.floor(p.x));
+    return computeTileName(lat(p), lon(p));
   }
 
   /** W and S are negative */
@@ -106,7 +141,11 @@ public class TileName extends Syncable implements Comparable<TileName>, Serializ
       ns = 's';
     }
     // XXX check sanity
-    return String.format("%c%03d%c%02d", ew, lon, ns, lat);
+    if (lon > 999 || lat > 99) {
+      return String.format("%c%03d%c%02d", ew, lon, ns, lat);
+    }
+    return new String(new char[] { ew, (char) ('0' + lon / 100), (char) ('0' + lon / 10 % 10),
+        (char) ('0' + lon % 10), ns, (char) ('0' + lat / 10), (char) ('0' + lat % 10) });
   }
 
   /**
@@ -122,16 +161,52 @@ public class TileName extends Syncable implements Comparable<TileName>, Serializ
     return null;
   }
 
+  /**
+   * @param n the name in the "e000s00" format
+   * @return the tile or <code>null</code> if it isn't a tile name
+   */
   public static TileName getTile(String n) {
-    return tilenameMap.get(n);
+    if (n == null || n.length() != 7) {
+      return null;
+    }
+    char ew = n.charAt(0);
+    char ns = n.charAt(4);
+    int lon = digits(n, 1, 4);
+    int lat = digits(n, 5, 7);
+    // w000 and s00 aren't used
+    if ((ew != 'e' && ew != 'w') || (ns != 'n' && ns != 's') || lon < 0 || lat < 0
+        || (ew == 'w' && lon == 0) || (ns == 's' && lat == 0)) {
+      return null;
+    }
+    return getTile(ew == 'w' ? -lon : lon, ns == 's' ? -lat : lat);
   }
 
+  /** The number in n from start to end or -1 if there is anything but digits. */
+  private static int digits(String n, int start, int end) {
+    int value = 0;
+    for (int i = start; i < end; i++) {
+      char c = n.charAt(i);
+      if (c < '0' || c > '9') {
+        return -1;
+      }
+      value = value * 10 + c - '0';
+    }
+    return value;
+  }
+
+  /**
+   * @param x the longitude
+   * @param y the latitude
+   */
   public static TileName getTile(int x, int y) {
-    return tilenameMap.get(computeTileName(y, x));
+    return getTile(getId(y, x));
   }
 
   public static TileName getTile(Point2D.Double p) {
-    return tilenameMap.get(computeTileName(p));
+    if (p == null) {
+      return null;
+    }
+    return getTile(lon(p), lat(p));
   }
 
   /**
@@ -216,12 +291,8 @@ public class TileName extends Syncable implements Comparable<TileName>, Serializ
   
   @Override
   public int hashCode() {
-    final int prime = 31;
-    int result = 1;
-    result = prime * result + lat;
-    result = prime * result + lon;
-    result = prime * result + ((name == null) ? 0 : name.hashCode());
-    return result;
+    // tiles with the same position but another name are rare, equals tells them apart
+    return 31 * lat + lon;
   }
 
   @Override
@@ -247,12 +318,17 @@ public class TileName extends Syncable implements Comparable<TileName>, Serializ
 
   public void setTypes(TerraSyncRootDirectoryType rootType, TerraSyncDirectoryType[] syncTypes) {
     TerraSyncDirectoryType[] tileTypes = Arrays.stream(syncTypes).filter((t) -> t.isTile()).toArray(TerraSyncDirectoryType[]::new);
-    typesMap.put(rootType, tileTypes);
+    synchronized (this) {
+      if (typesMap == null) {
+        typesMap = new EnumMap<>(TerraSyncRootDirectoryType.class);
+      }
+      typesMap.put(rootType, tileTypes);
+    }
   }
 
   @Override
-  public TerraSyncDirectoryType[] getTypes(TerraSyncRootDirectoryType rootType) {
-    return typesMap.get(rootType);
+  public synchronized TerraSyncDirectoryType[] getTypes(TerraSyncRootDirectoryType rootType) {
+    return typesMap == null ? null : typesMap.get(rootType);
   }
   
   
@@ -30,17 +30,46 @@ public class TileResult {
   public long time;
   public int errors;
   public int notFound;
+  /** Downloads thrown away because the hash didn't match the .dirindex. */
+  public int corrupt;
+  /** Requests sent to the mirror. */
+  public int requests;
 
   public TileResult(WeightedUrl url) {
     this.url = url;
   }
 
-  public Exception getException() {
+  public synchronized Exception getException() {
     return e;
   }
 
-  public void setException(Exception e) {
+  public synchronized void setException(Exception e) {
     this.e = e;
   }
 
+  /**
+   * Records a completed download. Called concurrently by the sync workers.
+   */
+  public synchronized void addDownload(long bytes, long millis) {
+    actualDownloads += 1;
+    numberBytes += bytes;
+    time += millis;
+  }
+
+  public synchronized void addEqual() {
+    equal += 1;
+  }
+
+  public synchronized void addError() {
+    errors += 1;
+  }
+
+  public synchronized void addCorrupt() {
+    corrupt += 1;
+  }
+
+  public synchronized void addRequest() {
+    requests += 1;
+  }
+
 }
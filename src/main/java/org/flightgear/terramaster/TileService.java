@@ -12,9 +12,12 @@ public interface TileService {
 	/**Add the tiles to the queue*/
 	void sync(Collection<Syncable> set, boolean ageCheck);
 
-	/***/
+	/**The queued Syncables in sync order. An immutable snapshot.*/
 	Collection<Syncable> getSyncList();
 
+	/**Sets the order the queued Syncables are synced in*/
+	void setSyncOrder(SyncOrder order);
+
 	void quit();
 
 	void cancel();
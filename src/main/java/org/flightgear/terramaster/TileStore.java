@@ -0,0 +1,304 @@
+package org.flightgear.terramaster;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * The {@link TileData} of the scenery in one slot per 1x1 tile of the globe, indexed by
+ * {@link TileName#getId()}. A fixed array of {@link TileName#TILE_COUNT} references instead of a
+ * hash map node and a table slot per tile, and a lookup is an array access. Reads don't lock, the
+ * updates of a tile are atomic like in a ConcurrentHashMap, so the watcher, the scan and the sync
+ * workers can change it at the same time. The iterators are weakly consistent.
+ */
+public class TileStore extends AbstractMap<TileName, TileData> implements ConcurrentMap<TileName, TileData> {
+
+  /** The updates lock one of these, chosen by the tile id */
+  private static final int LOCKS = 64;
+
+  private final AtomicReferenceArray<TileData> tiles = new AtomicReferenceArray<>(TileName.TILE_COUNT);
+  private final Object[] locks = new Object[LOCKS];
+  private final AtomicInteger size = new AtomicInteger();
+  private Set<Entry<TileName, TileData>> entrySet;
+
+  public TileStore() {
+    for (int i = 0; i < LOCKS; i++) {
+      locks[i] = new Object();
+    }
+  }
+
+  /**
+   * @return the data of the tile with the id or <code>null</code>
+   */
+  public TileData get(int id) {
+    return id < 0 || id >= TileName.TILE_COUNT ? null : tiles.get(id);
+  }
+
+  /** The id of a key that can be in the store, -1 otherwise. */
+  private static int id(Object key) {
+    return key instanceof TileName ? ((TileName) key).getId() : -1;
+  }
+
+  /** The id of a key that is to be stored. */
+  private static int checkedId(TileName key) {
+    int id = key.getId();
+    if (id < 0) {
+      throw new IllegalArgumentException("Not a tile " + key);
+    }
+    return id;
+  }
+
+  private Object lock(int id) {
+    return locks[id % LOCKS];
+  }
+
+  /** Sets the slot, the lock of the id has to be held. */
+  private TileData set(int id, TileData value) {
+    TileData old = tiles.getAndSet(id, value);
+    if (old == null && value != null) {
+      size.incrementAndGet();
+    } else if (old != null && value == null) {
+      size.decrementAndGet();
+    }
+    return old;
+  }
+
+  @Override
+  public int size() {
+    return size.get();
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size.get() == 0;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return get(key) != null;
+  }
+
+  @Override
+  public TileData get(Object key) {
+    return get(id(key));
+  }
+
+  @Override
+  public TileData put(TileName key, TileData value) {
+    Objects.requireNonNull(value);
+    int id = checkedId(key);
+    synchronized (lock(id)) {
+      return set(id, value);
+    }
+  }
+
+  @Override
+  public TileData remove(Object key) {
+    int id = id(key);
+    if (id < 0) {
+      return null;
+    }
+    synchronized (lock(id)) {
+      return set(id, null);
+    }
+  }
+
+  @Override
+  public void clear() {
+    for (int id = 0; id < TileName.TILE_COUNT; id++) {
+      if (tiles.get(id) != null) {
+        synchronized (lock(id)) {
+          set(id, null);
+        }
+      }
+    }
+  }
+
+  @Override
+  public TileData putIfAbsent(TileName key, TileData value) {
+    Objects.requireNonNull(value);
+    int id = checkedId(key);
+    synchronized (lock(id)) {
+      TileData old = tiles.get(id);
+      if (old == null) {
+        set(id, value);
+      }
+      return old;
+    }
+  }
+
+  @Override
+  public boolean remove(Object key, Object value) {
+    int id = id(key);
+    if (id < 0 || value == null) {
+      return false;
+    }
+    synchronized (lock(id)) {
+      if (!value.equals(tiles.get(id))) {
+        return false;
+      }
+      set(id, null);
+      return true;
+    }
+  }
+
+  @Override
+  public boolean replace(TileName key, TileData oldValue, TileData newValue) {
+    Objects.requireNonNull(newValue);
+    int id = checkedId(key);
+    synchronized (lock(id)) {
+      if (!oldValue.equals(tiles.get(id))) {
+        return false;
+      }
+      set(id, newValue);
+      return true;
+    }
+  }
+
+  @Override
+  public TileData replace(TileName key, TileData value) {
+    Objects.requireNonNull(value);
+    int id = checkedId(key);
+    synchronized (lock(id)) {
+      return tiles.get(id) == null ? null : set(id, value);
+    }
+  }
+
+  @Override
+  public TileData computeIfAbsent(TileName key, Function<? super TileName, ? extends TileData> mappingFunction) {
+    int id = checkedId(key);
+    TileData value = tiles.get(id);
+    if (value != null) {
+      return value;
+    }
+    synchronized (lock(id)) {
+      value = tiles.get(id);
+      if (value == null) {
+        value = mappingFunction.apply(key);
+        if (value != null) {
+          set(id, value);
+        }
+      }
+      return value;
+    }
+  }
+
+  @Override
+  public TileData computeIfPresent(TileName key,
+      BiFunction<? super TileName, ? super TileData, ? extends TileData> remappingFunction) {
+    int id = checkedId(key);
+    if (tiles.get(id) == null) {
+      return null;
+    }
+    synchronized (lock(id)) {
+      TileData old = tiles.get(id);
+      if (old == null) {
+        return null;
+      }
+      TileData value = remappingFunction.apply(key, old);
+      set(id, value);
+      return value;
+    }
+  }
+
+  @Override
+  public TileData compute(TileName key,
+      BiFunction<? super TileName, ? super TileData, ? extends TileData> remappingFunction) {
+    int id = checkedId(key);
+    synchronized (lock(id)) {
+      TileData value = remappingFunction.apply(key, tiles.get(id));
+      set(id, value);
+      return value;
+    }
+  }
+
+  @Override
+  public TileData merge(TileName key, TileData value,
+      BiFunction<? super TileData, ? super TileData, ? extends TileData> remappingFunction) {
+    Objects.requireNonNull(value);
+    int id = checkedId(key);
+    synchronized (lock(id)) {
+      TileData old = tiles.get(id);
+      TileData merged = old == null ? value : remappingFunction.apply(old, value);
+      set(id, merged);
+      return merged;
+    }
+  }
+
+  @Override
+  public Set<Entry<TileName, TileData>> entrySet() {
+    if (entrySet == null) {
+      entrySet = new AbstractSet<Entry<TileName, TileData>>() {
+        @Override
+        public Iterator<Entry<TileName, TileData>> iterator() {
+          return new EntryIterator();
+        }
+
+        @Override
+        public int size() {
+          return TileStore.this.size();
+        }
+
+        @Override
+        public void clear() {
+          TileStore.this.clear();
+        }
+      };
+    }
+    return entrySet;
+  }
+
+  /** Walks the slots, what was set when it got there is seen. */
+  private class EntryIterator implements Iterator<Entry<TileName, TileData>> {
+    private int next = -1;
+    private TileData nextValue;
+    private int last = -1;
+
+    EntryIterator() {
+      advance();
+    }
+
+    private void advance() {
+      nextValue = null;
+      while (++next < TileName.TILE_COUNT) {
+        nextValue = tiles.get(next);
+        if (nextValue != null) {
+          return;
+        }
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return nextValue != null;
+    }
+
+    @Override
+    public Entry<TileName, TileData> next() {
+      if (nextValue == null) {
+        throw new NoSuchElementException();
+      }
+      Entry<TileName, TileData> e = new SimpleImmutableEntry<>(TileName.getTile(next), nextValue);
+      last = next;
+      advance();
+      return e;
+    }
+
+    @Override
+    public void remove() {
+      if (last < 0) {
+        throw new IllegalStateException();
+      }
+      TileStore.this.remove(TileName.getTile(last));
+      last = -1;
+    }
+  }
+}
@@ -0,0 +1,99 @@
+package org.flightgear.terramaster;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link HttpTransport} on top of {@link HttpURLConnection}. Handles everything (https, proxies)
+ * and relies on the keep-alive cache of the JRE to reuse the connections to a mirror.
+ */
+public class UrlConnectionTransport implements HttpTransport {
+
+  private final Set<HttpURLConnection> active = ConcurrentHashMap.newKeySet();
+
+  @Override
+  public Response get(URL url, Map<String, String> headers) throws IOException {
+    HttpURLConnection httpConn = (HttpURLConnection) url.openConnection();
+    httpConn.setConnectTimeout(CONNECT_TIMEOUT);
+    httpConn.setReadTimeout(READ_TIMEOUT);
+    for (Map.Entry<String, String> header : headers.entrySet()) {
+      httpConn.setRequestProperty(header.getKey(), header.getValue());
+    }
+    active.add(httpConn);
+    try {
+      return new UrlConnectionResponse(httpConn, httpConn.getResponseCode());
+    } catch (IOException e) {
+      active.remove(httpConn);
+      httpConn.disconnect();
+      throw e;
+    }
+  }
+
+  @Override
+  public void abort() {
+    for (HttpURLConnection httpConn : active) {
+      httpConn.disconnect();
+    }
+  }
+
+  @Override
+  public void close() {
+    abort();
+  }
+
+  private class UrlConnectionResponse implements Response {
+    private final HttpURLConnection httpConn;
+    private final int responseCode;
+    private InputStream body;
+
+    UrlConnectionResponse(HttpURLConnection httpConn, int responseCode) {
+      this.httpConn = httpConn;
+      this.responseCode = responseCode;
+    }
+
+    @Override
+    public URL getURL() {
+      return httpConn.getURL();
+    }
+
+    @Override
+    public int getResponseCode() {
+      return responseCode;
+    }
+
+    @Override
+    public String getHeader(String name) {
+      return httpConn.getHeaderField(name);
+    }
+
+    @Override
+    public synchronized InputStream getInputStream() throws IOException {
+      if (body == null) {
+        body = httpConn.getInputStream();
+      }
+      return body;
+    }
+
+    @Override
+    public synchronized void close() {
+      active.remove(httpConn);
+      try {
+        // closing the stream hands the connection back to the keep-alive cache, without one
+        // there is nothing to hand back
+        InputStream in = body != null ? body : httpConn.getErrorStream();
+        if (in != null) {
+          in.close();
+        } else {
+          httpConn.disconnect();
+        }
+      } catch (IOException e) {
+        httpConn.disconnect();
+      }
+    }
+  }
+}
@@ -0,0 +1,90 @@
+package org.flightgear.terramaster;
+
+/**
+ * The part of the globe within the map radius of the centre of the view. A point is in it when
+ * the dot product of its unit vector with the one of the centre is above the cosine of the radius.
+ * The vectors of points in whole 1/100 degrees, the way the map polygons have them, come from
+ * tables of sines and cosines, so testing a vertex needs no trigonometry at all.
+ */
+final class VisibleCap {
+
+  /** Sine and cosine of the latitudes -90 to 90 degrees, in 1/100 degree */
+  private static final double[] SIN_LAT = new double[18001];
+  private static final double[] COS_LAT = new double[18001];
+  /** Sine and cosine of the longitudes 0 to 360 degrees, in 1/100 degree */
+  private static final double[] SIN_LON = new double[36000];
+  private static final double[] COS_LON = new double[36000];
+
+  static {
+    for (int i = 0; i < SIN_LAT.length; i++) {
+      double a = Math.toRadians((i - 9000) / 100.0);
+      SIN_LAT[i] = Math.sin(a);
+      COS_LAT[i] = Math.cos(a);
+    }
+    for (int i = 0; i < SIN_LON.length; i++) {
+      double a = Math.toRadians(i / 100.0);
+      SIN_LON[i] = Math.sin(a);
+      COS_LON[i] = Math.cos(a);
+    }
+  }
+
+  private final double latitude;
+  private final double longitude;
+  private final double radius;
+  /** The unit vector of the centre */
+  private final double cx;
+  private final double cy;
+  private final double cz;
+  private final double minDot;
+
+  /**
+   * @param latitude of the centre in radians, negated like in {@link MapPanel}
+   * @param longitude of the centre in radians
+   * @param radius the distance from the centre that is visible in radians
+   */
+  VisibleCap(double latitude, double longitude, double radius) {
+    this.latitude = latitude;
+    this.longitude = longitude;
+    this.radius = radius;
+    cx = Math.cos(latitude) * Math.cos(longitude);
+    cy = Math.cos(latitude) * Math.sin(longitude);
+    cz = Math.sin(latitude);
+    // nothing is further away than the antipode
+    minDot = radius >= Math.PI ? -2 : Math.cos(radius);
+  }
+
+  boolean isFor(double latitude, double longitude, double radius) {
+    return Double.compare(this.latitude, latitude) == 0 && Double.compare(this.longitude, longitude) == 0
+        && Double.compare(this.radius, radius) == 0;
+  }
+
+  /**
+   * @param lon in radians
+   * @param lat in radians, negated like the centre
+   */
+  boolean contains(double lon, double lat) {
+    return cosDistance(lon, lat) > minDot;
+  }
+
+  /**
+   * The cosine of the distance of the point from the centre, the dot product of their vectors.
+   *
+   * @param lon in radians
+   * @param lat in radians, negated like the centre
+   */
+  double cosDistance(double lon, double lat) {
+    return Math.cos(lat) * (cx * Math.cos(lon) + cy * Math.sin(lon)) + cz * Math.sin(lat);
+  }
+
+  /**
+   * @param lon in 1/100 degree
+   * @param lat in 1/100 degree, negated like the centre
+   */
+  boolean containsCentidegrees(int lon, int lat) {
+    if (lat < -9000 || lat > 9000) {
+      return contains(Math.toRadians(lon / 100.0), Math.toRadians(lat / 100.0));
+    }
+    int i = Math.floorMod(lon, 36000);
+    return COS_LAT[lat + 9000] * (cx * COS_LON[i] + cy * SIN_LON[i]) + cz * SIN_LAT[lat + 9000] > minDot;
+  }
+}
@@ -1,7 +1,19 @@
 package org.flightgear.terramaster.gshhs;
 
-import java.io.DataInput;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -10,31 +22,30 @@ public class GshhsReader {
   public static final String LOGGER_CATEGORY = "org.flightgear";
   Logger log = Logger.getLogger(LOGGER_CATEGORY);
 
-  
-  private int readGshhsHeader(DataInput s, GshhsHeader h) {
-    int fl;
-    try {
-      h.id = s.readInt();
-      h.setNumPoints(s.readInt()); // npoints
-      fl = s.readInt();
-      h.setGreenwich((fl & 1 << 16) > 0 ? true : false);
-      h.setLevel((byte) (fl & 0xff));
-      h.setWest(s.readInt());
-      h.setEast(s.readInt());
-      h.setSouth(s.readInt());
-      h.setNorth(s.readInt());
-      h.area = s.readInt();
-      h.areaFull = s.readInt();
-      h.container = s.readInt();
-      h.ancestor = s.readInt();
-      return h.getNumPoints();
-    } catch (Exception e) {
-      return -1;
-    }
+  /** The size of a header in ints */
+  private static final int HEADER_INTS = 11;
+
+  private GshhsHeader readGshhsHeader(IntBuffer s) {
+    GshhsHeader h = new GshhsHeader();
+    h.id = s.get();
+    h.setNumPoints(s.get()); // npoints
+    int fl = s.get();
+    h.setGreenwich((fl & 1 << 16) > 0);
+    h.setLevel((byte) (fl & 0xff));
+    h.setWest(s.get());
+    h.setEast(s.get());
+    h.setSouth(s.get());
+    h.setNorth(s.get());
+    h.area = s.get();
+    h.areaFull = s.get();
+    h.container = s.get();
+    h.ancestor = s.get();
+    return h;
   }
 
   /**
-   * reads in GSHHS and builds ArrayList of polys
+   * reads in GSHHS and builds ArrayList of polys. The file is mapped or read in one go and the
+   * points are copied straight into arrays of the right size.
    */
 
   public ArrayList<MapPoly> newPolyList(String filename) {
@@ -42,22 +53,52 @@ public class GshhsReader {
     ArrayList<MapPoly> poly = new ArrayList<MapPoly>();
 
     try {
-      DataInput s = new DataInputStream(
-          // new FileInputStream(filename));
-          getClass().getClassLoader().getResourceAsStream(filename));
-      int n = 0;
-      do {
-        GshhsHeader h = new GshhsHeader();
-        n = readGshhsHeader(s, h);
-        if (n > 0)
-          poly.add(new MapPoly(s, h));
-      } while (n > 0);
+      // big endian like the file
+      IntBuffer s = read(filename).asIntBuffer();
+      while (s.remaining() >= HEADER_INTS) {
+        GshhsHeader h = readGshhsHeader(s);
+        if (h.getNumPoints() <= 0 || s.remaining() < 2 * h.getNumPoints())
+          break;
+        poly.add(new MapPoly(s, h));
+      }
     } catch (Exception e) {
       log.log(Level.SEVERE, filename, e);
     }
 
-    // System.out.format("%s: %d polys\n", filename, poly.size());
     return poly;
   }
 
+  /**
+   * Maps the resource if it is a file, otherwise reads it into memory.
+   */
+  private ByteBuffer read(String filename) throws IOException {
+    URL url = getClass().getClassLoader().getResource(filename);
+    if (url == null) {
+      throw new FileNotFoundException(filename);
+    }
+    if ("file".equals(url.getProtocol())) {
+      try (FileChannel c = FileChannel.open(Paths.get(url.toURI()), StandardOpenOption.READ)) {
+        return c.map(MapMode.READ_ONLY, 0, c.size());
+      } catch (URISyntaxException e) {
+        log.log(Level.FINE, filename, e);
+      }
+    }
+    URLConnection conn = url.openConnection();
+    long length = conn.getContentLengthLong();
+    try (InputStream in = conn.getInputStream()) {
+      if (length >= 0 && length <= Integer.MAX_VALUE) {
+        byte[] b = new byte[(int) length];
+        new DataInputStream(in).readFully(b);
+        return ByteBuffer.wrap(b);
+      }
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buf = new byte[65536];
+      int n;
+      while ((n = in.read(buf)) > 0) {
+        out.write(buf, 0, n);
+      }
+      return ByteBuffer.wrap(out.toByteArray());
+    }
+  }
+
 }
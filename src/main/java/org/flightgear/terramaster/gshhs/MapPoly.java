@@ -1,8 +1,7 @@
 package org.flightgear.terramaster.gshhs;
 
 import java.awt.Polygon;
-import java.io.DataInput;
-import java.io.IOException;
+import java.nio.IntBuffer;
 
 public class MapPoly extends Polygon {
 
@@ -21,25 +20,30 @@ public class MapPoly extends Polygon {
   }
 
   /**
-   * reads raw GSHHS format
+   * reads the points of a polygon in raw GSHHS format from a buffer over the file, into arrays of
+   * exactly the number of points.
    * 
-   * @param s
+   * @param s positioned after the header
    * @param h
-   * @throws IOException 
-   * @throws Exception
    */
 
-  public MapPoly(DataInput s, GshhsHeader h) throws IOException {
+  public MapPoly(IntBuffer s, GshhsHeader h) {
     gshhsHeader = h;
     level = h.getLevel();
 
-    for (int i = 0; i < h.getNumPoints(); ++i) {
-      float x = (float)s.readInt() / 10000;
-      float y = -(float)s.readInt() / 10000;
-      if ((h.isGreenwich() && x > 27000) || h.getWest() > 180000000)
-        x -= 36000;
-      addPoint((int) x, (int) y);
+    int n = h.getNumPoints();
+    xpoints = new int[n];
+    ypoints = new int[n];
+    boolean west = h.getWest() > 180000000;
+    for (int i = 0; i < n; ++i) {
+      int x = s.get();
+      int y = s.get();
+      if ((h.isGreenwich() && x > 270000000) || west)
+        x -= 360000000;
+      xpoints[i] = x / 10000;
+      ypoints[i] = -y / 10000;
     }
+    npoints = n;
   }
 
   public double getNumPoints() {
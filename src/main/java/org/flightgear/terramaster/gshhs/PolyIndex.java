@@ -0,0 +1,101 @@
+package org.flightgear.terramaster.gshhs;
+
+import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.util.List;
+
+/**
+ * A grid of 10x10 degree cells over the bounding boxes of map polygons, to find the polygons in a
+ * part of the world without looking at their points. The points are in 1/100 degree with the
+ * latitude negated, as {@link MapPoly} has them.
+ */
+public class PolyIndex {
+
+  private static final int CELL = 10;
+  private static final int COLS = 360 / CELL;
+  private static final int ROWS = 180 / CELL;
+
+  private final int size;
+  /** The polygons touching each cell, by row and column */
+  private final int[][] cells = new int[COLS * ROWS][];
+
+  public PolyIndex(List<? extends Polygon> polys) {
+    size = polys.size();
+    int[] counts = new int[cells.length];
+    Rectangle[] bounds = new Rectangle[size];
+    for (int i = 0; i < size; i++) {
+      // the bounds of a polygon without points would be put at 0,0
+      bounds[i] = polys.get(i).npoints == 0 ? null : polys.get(i).getBounds();
+      forCells(bounds[i], c -> counts[c]++);
+    }
+    for (int c = 0; c < cells.length; c++) {
+      cells[c] = new int[counts[c]];
+      counts[c] = 0;
+    }
+    for (int i = 0; i < size; i++) {
+      int poly = i;
+      forCells(bounds[i], c -> cells[c][counts[c]++] = poly);
+    }
+  }
+
+  private interface CellConsumer {
+    void accept(int cell);
+  }
+
+  private static void forCells(Rectangle r, CellConsumer consumer) {
+    if (r == null) {
+      return;
+    }
+    double west = r.x / 100.0;
+    double east = (r.x + r.width) / 100.0;
+    double south = -(r.y + r.height) / 100.0;
+    double north = -r.y / 100.0;
+    forCells(west, south, east, north, consumer);
+  }
+
+  private static void forCells(double west, double south, double east, double north, CellConsumer consumer) {
+    int firstCol = (int) Math.floor((west + 180) / CELL);
+    int cols = Math.min(COLS, (int) Math.floor((east + 180) / CELL) - firstCol + 1);
+    int firstRow = row(south);
+    int lastRow = row(north);
+    for (int row = firstRow; row <= lastRow; row++) {
+      for (int i = 0; i < cols; i++) {
+        consumer.accept(row * COLS + Math.floorMod(firstCol + i, COLS));
+      }
+    }
+  }
+
+  private static int row(double lat) {
+    return Math.max(0, Math.min(ROWS - 1, (int) Math.floor((lat + 90) / CELL)));
+  }
+
+  /**
+   * Finds the polygons whose bounding box may touch the area. East may be beyond 180 or
+   * less than west to wrap around the date line.
+   *
+   * @param out gets the indices of the polygons in ascending order, must hold all polygons
+   * @return the number of polygons found
+   */
+  public int query(double west, double south, double east, double north, int[] out) {
+    if (east < west) {
+      east += 360;
+    }
+    boolean[] found = new boolean[size];
+    forCells(west, south, east, north, c -> {
+      for (int poly : cells[c]) {
+        found[poly] = true;
+      }
+    });
+    int n = 0;
+    for (int i = 0; i < size; i++) {
+      if (found[i]) {
+        out[n++] = i;
+      }
+    }
+    return n;
+  }
+
+  public int size() {
+    return size;
+  }
+}
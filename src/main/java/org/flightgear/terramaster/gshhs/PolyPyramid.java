@@ -0,0 +1,133 @@
+package org.flightgear.terramaster.gshhs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A map layer at several levels of detail. Level 0 are the polygons as read, the others are
+ * simplified with Douglas-Peucker to a tolerance in 1/100 degree, so a zoomed out map projects a
+ * fraction of the points. The levels are built the first time they are asked for.
+ */
+public class PolyPyramid {
+
+  /** The tolerance of each level in 1/100 degree */
+  static final int[] TOLERANCES = { 0, 5, 15, 40, 100 };
+
+  /** The polygons of one level with their index. */
+  public static final class Level {
+    public final List<MapPoly> polys;
+    public final PolyIndex index;
+
+    Level(List<MapPoly> polys) {
+      this.polys = polys;
+      this.index = new PolyIndex(polys);
+    }
+  }
+
+  private final Level[] levels = new Level[TOLERANCES.length];
+  /** Filled polygons need three points, lines two */
+  private final int minPoints;
+
+  /**
+   * @param closed true for filled polygons, false for lines
+   */
+  public PolyPyramid(List<MapPoly> polys, boolean closed) {
+    levels[0] = new Level(polys == null ? Collections.<MapPoly>emptyList() : polys);
+    minPoints = closed ? 3 : 2;
+  }
+
+  /** The polygons as read. */
+  public List<MapPoly> getPolys() {
+    return levels[0].polys;
+  }
+
+  /**
+   * The coarsest level whose error is at most a pixel.
+   *
+   * @param degreesPerPixel the size of a pixel at the centre of the map
+   */
+  public synchronized Level getLevel(double degreesPerPixel) {
+    int level = 0;
+    while (level + 1 < TOLERANCES.length && TOLERANCES[level + 1] <= degreesPerPixel * 100) {
+      level++;
+    }
+    if (levels[level] == null) {
+      levels[level] = new Level(simplify(levels[0].polys, TOLERANCES[level]));
+    }
+    return levels[level];
+  }
+
+  private List<MapPoly> simplify(List<MapPoly> polys, int tolerance) {
+    List<MapPoly> simplified = new ArrayList<>(polys.size());
+    for (MapPoly p : polys) {
+      MapPoly s = simplify(p, tolerance);
+      if (s.npoints >= minPoints) {
+        simplified.add(s);
+      }
+    }
+    return simplified;
+  }
+
+  /**
+   * Douglas-Peucker without recursion, the big continents have too many points for the stack.
+   */
+  static MapPoly simplify(MapPoly p, double tolerance) {
+    MapPoly s = new MapPoly();
+    s.setGshhsHeader(p.getGshhsHeader());
+    s.level = p.level;
+    int n = p.npoints;
+    if (n < 3) {
+      for (int i = 0; i < n; i++) {
+        s.addPoint(p.xpoints[i], p.ypoints[i]);
+      }
+      return s;
+    }
+    boolean[] keep = new boolean[n];
+    keep[0] = true;
+    keep[n - 1] = true;
+    double tolerance2 = tolerance * tolerance;
+    int[] stack = new int[2 * n];
+    int top = 0;
+    stack[top++] = 0;
+    stack[top++] = n - 1;
+    while (top > 0) {
+      int last = stack[--top];
+      int first = stack[--top];
+      double max = -1;
+      int farthest = -1;
+      for (int i = first + 1; i < last; i++) {
+        double d = distance2(p.xpoints[i], p.ypoints[i], p.xpoints[first], p.ypoints[first], p.xpoints[last],
+            p.ypoints[last]);
+        if (d > max) {
+          max = d;
+          farthest = i;
+        }
+      }
+      if (farthest > 0 && max > tolerance2) {
+        keep[farthest] = true;
+        stack[top++] = first;
+        stack[top++] = farthest;
+        stack[top++] = farthest;
+        stack[top++] = last;
+      }
+    }
+    for (int i = 0; i < n; i++) {
+      if (keep[i]) {
+        s.addPoint(p.xpoints[i], p.ypoints[i]);
+      }
+    }
+    return s;
+  }
+
+  /** Square of the distance of the point from the segment a, b. */
+  private static double distance2(double x, double y, double ax, double ay, double bx, double by) {
+    double dx = bx - ax;
+    double dy = by - ay;
+    double len2 = dx * dx + dy * dy;
+    double t = len2 == 0 ? 0 : Math.max(0, Math.min(1, ((x - ax) * dx + (y - ay) * dy) / len2));
+    double ex = x - ax - t * dx;
+    double ey = y - ay - t * dy;
+    return ex * ex + ey * ey;
+  }
+}
@@ -0,0 +1,46 @@
+package org.flightgear.terramaster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestDirIndex {
+
+  private static final String HASH = "0123456789abcdef0123456789abcdef01234567";
+
+  @Test
+  public void testParse() {
+    DirIndex index = DirIndex.parse("version:1\r\npath:Objects/e000n50\r\ntime:20240101-00:00Z\r\n"
+        + "d:e001n51:" + HASH + "\r\n"
+        + "t:e002n51.txz:" + HASH + ":4711\r\n"
+        + "f:e003n51.stg:" + HASH.toUpperCase() + ":42\r\n");
+    assertEquals("1", index.getVersion());
+    assertEquals("Objects/e000n50", index.getPath());
+    assertEquals(3, index.getEntries().size());
+
+    DirIndex.Entry dir = index.get("e001n51");
+    assertEquals(DirIndex.Type.DIRECTORY, dir.getType());
+    assertEquals(HASH, dir.getHashHex());
+    assertEquals(-1, dir.getSize());
+
+    DirIndex.Entry tar = index.getByBaseName("e002n51");
+    assertEquals(DirIndex.Type.TARBALL, tar.getType());
+    assertEquals("e002n51.txz", tar.getName());
+    assertEquals(4711, tar.getSize());
+
+    DirIndex.Entry file = index.get("e003n51.stg");
+    assertEquals(HASH, file.getHashHex());
+    assertEquals(42, file.getSize());
+  }
+
+  @Test
+  public void testBroken() {
+    DirIndex index = DirIndex.parse("garbage\n\nf:noHash\nf:a.ac:xyz:12\nx:a:b\n");
+    assertEquals(2, index.getEntries().size());
+    assertNull(index.get("noHash").getHash());
+    assertEquals("", index.get("a.ac").getHashHex());
+    assertTrue(DirIndex.parse("").isEmpty());
+  }
+}
@@ -0,0 +1,46 @@
+package org.flightgear.terramaster;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.Test;
+
+public class TestDirIndexCache {
+
+  private static final Path ROOT = Paths.get("/scenery");
+
+  private static final DirIndex INDEX = DirIndex
+      .parse("version:1\npath:Terrain/e000n50\nd:e001n51:0123456789abcdef0123456789abcdef01234567\n");
+
+  @Test
+  public void testTtl() {
+    DirIndexCache cache = new DirIndexCache(60000, DirIndexCache.DEFAULT_MEMORY_LIMIT);
+    long now = System.currentTimeMillis();
+    cache.put(ROOT, "Terrain/e000n50", INDEX, now);
+    assertSame(INDEX, cache.get(ROOT, "Terrain/e000n50"));
+    assertNull(cache.get(Paths.get("/other"), "Terrain/e000n50"));
+
+    cache.put(ROOT, "Terrain/e010n50", INDEX, now - 120000);
+    assertNull(cache.get(ROOT, "Terrain/e010n50"));
+  }
+
+  @Test
+  public void testLru() {
+    DirIndexCache cache = new DirIndexCache(60000, 2000);
+    long now = System.currentTimeMillis();
+    for (int i = 0; i < 20; i++) {
+      cache.put(ROOT, "dir" + i, INDEX, now);
+      // keep the first one in use
+      assertNotNull(cache.get(ROOT, "dir0"));
+    }
+    assertTrue(cache.getMemory() <= 2000);
+    assertTrue(cache.size() < 20);
+    assertNull(cache.get(ROOT, "dir1"));
+    assertNotNull(cache.get(ROOT, "dir19"));
+  }
+}
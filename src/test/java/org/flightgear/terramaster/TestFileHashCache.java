@@ -0,0 +1,67 @@
+package org.flightgear.terramaster;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestFileHashCache {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static final byte[] HASH = new byte[20];
+  static {
+    HASH[0] = 42;
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    Path root = folder.getRoot().toPath();
+    Path file = Files.createDirectories(root.resolve("Terrain/e000n50")).resolve("a.btg.gz");
+    Files.write(file, new byte[] {1, 2, 3});
+    BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+
+    FileHashCache cache = new FileHashCache(root);
+    cache.put(file, attrs, HASH);
+    cache.save();
+
+    FileHashCache loaded = new FileHashCache(root);
+    loaded.load();
+    assertEquals(1, loaded.size());
+    assertArrayEquals(HASH, loaded.get(file, attrs));
+  }
+
+  @Test
+  public void testChangedFileIsNotTrusted() throws IOException {
+    Path root = folder.getRoot().toPath();
+    Path file = root.resolve("a.stg");
+    Files.write(file, new byte[] {1, 2, 3});
+    FileHashCache cache = new FileHashCache(root);
+    cache.put(file, Files.readAttributes(file, BasicFileAttributes.class), HASH);
+
+    Files.setLastModifiedTime(file, FileTime.fromMillis(0));
+    assertNull(cache.get(file, Files.readAttributes(file, BasicFileAttributes.class)));
+
+    Files.write(file, new byte[] {1, 2, 3, 4});
+    assertNull(cache.get(file, Files.readAttributes(file, BasicFileAttributes.class)));
+  }
+
+  @Test
+  public void testBrokenCacheFile() throws IOException {
+    Path root = folder.getRoot().toPath();
+    Files.write(root.resolve(FileHashCache.CACHE_FILENAME), new byte[] {1, 2, 3});
+    FileHashCache cache = new FileHashCache(root);
+    cache.load();
+    assertEquals(0, cache.size());
+  }
+}
@@ -17,4 +17,20 @@ public class TestGSHHS {
     assertEquals(10717,newPolyList.size());
   }
 
+  @Test
+  public void testBorders() {
+    ArrayList<MapPoly> borders = new GshhsReader().newPolyList("maps/wdb_borders_i.b");
+    assertEquals(1125, borders.size());
+    for (MapPoly p : borders) {
+      assertEquals(p.getNumPoints(), p.npoints, 0);
+      assertEquals(p.npoints, p.xpoints.length);
+      assertTrue(p.getBounds().getMinY() >= -9000 && p.getBounds().getMaxY() <= 9000);
+    }
+  }
+
+  @Test
+  public void testMissing() {
+    assertTrue(new GshhsReader().newPolyList("maps/missing.b").isEmpty());
+  }
+
 }
@@ -0,0 +1,161 @@
+package org.flightgear.terramaster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestInventorySnapshot {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testEncode() {
+    assertEquals("e001n51", InventorySnapshot.decode(InventorySnapshot.encode("e001n51")));
+    assertEquals("w180s90.zip", InventorySnapshot.decode(InventorySnapshot.encode("w180s90.zip")));
+    assertEquals(InventorySnapshot.NO_BLOCK, InventorySnapshot.encode("Terrain"));
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    Path root = folder.newFolder("scenery").toPath();
+    Files.createDirectories(root.resolve("Terrain/e000n50/e001n51"));
+    Files.createDirectories(root.resolve("Objects/e000n50/e001n51"));
+    Files.createDirectories(root.resolve("Terrain/w010s10/w001s01"));
+    Map<TerraSyncRootDirectoryType, Path> roots = Collections.singletonMap(TerraSyncRootDirectoryType.WS20, root);
+    SceneryInventory inventory = new SceneryInventory(roots);
+    inventory.scan();
+
+    Path file = folder.getRoot().toPath().resolve(InventorySnapshot.FILENAME);
+    inventory.snapshot().save(file);
+    InventorySnapshot loaded = InventorySnapshot.load(file);
+    assertNotNull(loaded);
+    assertEquals(roots, loaded.getRoots());
+
+    Map<TileName, TileData> map = new HashMap<>();
+    loaded.restore(map);
+    assertEquals(2, map.size());
+    TileData t = map.get(TileName.getTile("e001n51"));
+    assertTrue(t.hasDirectory(TerraSyncRootDirectoryType.WS20, TerraSyncDirectoryType.TERRAIN));
+    assertTrue(t.hasDirectory(TerraSyncRootDirectoryType.WS20, TerraSyncDirectoryType.OBJECTS));
+    assertEquals(root.resolve("Terrain/e000n50/e001n51").toFile(),
+        t.getDir(TerraSyncRootDirectoryType.WS20, TerraSyncDirectoryType.TERRAIN));
+  }
+
+  @Test
+  public void testRevalidate() throws IOException {
+    Path root = folder.newFolder("scenery").toPath();
+    Files.createDirectories(root.resolve("Terrain/e000n50/e001n51"));
+    Files.createDirectories(root.resolve("Terrain/e000n50/e002n51"));
+    Files.createDirectories(root.resolve("Terrain/e010n50/e011n51"));
+    Map<TerraSyncRootDirectoryType, Path> roots = Collections.singletonMap(TerraSyncRootDirectoryType.WS20, root);
+    SceneryInventory inventory = new SceneryInventory(roots);
+    inventory.scan();
+    InventorySnapshot snapshot = inventory.snapshot();
+
+    // changed while we weren't running
+    Path block = root.resolve("Terrain/e000n50");
+    Files.delete(block.resolve("e002n51"));
+    Files.createDirectories(block.resolve("e003n51"));
+    Files.setLastModifiedTime(block, FileTime.fromMillis(0));
+    Files.delete(root.resolve("Terrain/e010n50/e011n51"));
+    Files.delete(root.resolve("Terrain/e010n50"));
+
+    SceneryInventory restored = new SceneryInventory(roots);
+    restored.start(snapshot);
+    try {
+      assertNotNull(restored.getMap().get(TileName.getTile("e001n51")));
+      assertNotNull(restored.getMap().get(TileName.getTile("e003n51")));
+      assertNull(restored.getMap().get(TileName.getTile("e002n51")));
+      assertNull(restored.getMap().get(TileName.getTile("e011n51")));
+    } finally {
+      restored.close();
+    }
+  }
+
+  @Test
+  public void testTimesOfTheListing() throws IOException {
+    Path root = folder.newFolder("scenery").toPath();
+    Path block = root.resolve("Terrain/e000n50");
+    Files.createDirectories(block.resolve("e001n51"));
+    Files.setLastModifiedTime(block, FileTime.fromMillis(1000000));
+    Map<TerraSyncRootDirectoryType, Path> roots = Collections.singletonMap(TerraSyncRootDirectoryType.WS20, root);
+    SceneryInventory inventory = new SceneryInventory(roots);
+    inventory.scan();
+
+    // not watched, the map doesn't know the tile
+    Files.createDirectories(block.resolve("e002n51"));
+    InventorySnapshot snapshot = inventory.snapshot();
+    assertFalse(snapshot.isCurrent(TerraSyncRootDirectoryType.WS20, TerraSyncDirectoryType.TERRAIN,
+        InventorySnapshot.encode("e000n50"), block));
+
+    SceneryInventory restored = new SceneryInventory(roots);
+    restored.start(snapshot);
+    try {
+      assertNotNull(restored.getMap().get(TileName.getTile("e002n51")));
+    } finally {
+      restored.close();
+    }
+  }
+
+  @Test
+  public void testOtherRootsAreIgnored() throws IOException {
+    Path root = folder.newFolder("scenery").toPath();
+    Files.createDirectories(root.resolve("Terrain/e000n50/e001n51"));
+    SceneryInventory inventory = new SceneryInventory(
+        Collections.singletonMap(TerraSyncRootDirectoryType.WS20, root));
+    inventory.scan();
+    InventorySnapshot snapshot = inventory.snapshot();
+
+    Path other = folder.newFolder("other").toPath();
+    SceneryInventory restored = new SceneryInventory(
+        Collections.singletonMap(TerraSyncRootDirectoryType.WS20, other));
+    restored.start(snapshot);
+    try {
+      assertTrue(restored.getMap().isEmpty());
+    } finally {
+      restored.close();
+    }
+  }
+
+  @Test
+  public void testBrokenFile() throws IOException {
+    Path file = folder.newFile(InventorySnapshot.FILENAME).toPath();
+    Files.write(file, new byte[] {1, 2, 3});
+    assertNull(InventorySnapshot.load(file));
+    assertFalse(Files.exists(folder.getRoot().toPath().resolve("missing")));
+    assertNull(InventorySnapshot.load(folder.getRoot().toPath().resolve("missing")));
+  }
+
+  @Test
+  public void testCorruptEntry() throws IOException {
+    Path root = folder.newFolder("scenery").toPath();
+    Files.createDirectories(root.resolve("Terrain/e000n50/e001n51"));
+    SceneryInventory inventory = new SceneryInventory(
+        Collections.singletonMap(TerraSyncRootDirectoryType.WS20, root));
+    inventory.scan();
+    Path file = folder.getRoot().toPath().resolve(InventorySnapshot.FILENAME);
+    inventory.snapshot().save(file);
+    // the file ends with an entry, make it a tile id out of range
+    try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+      raf.seek(raf.length() - 4);
+      raf.writeInt(TileName.TILE_COUNT << 1);
+    }
+    assertNull(InventorySnapshot.load(file));
+  }
+}
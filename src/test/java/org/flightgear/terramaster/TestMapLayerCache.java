@@ -0,0 +1,70 @@
+package org.flightgear.terramaster;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.flightgear.terramaster.gshhs.MapPoly;
+import org.junit.Test;
+
+public class TestMapLayerCache {
+
+  private static final MapView WORLD = new MapView(true, 0, 0, -5, 200, 100);
+
+  private static MapLayers layers() {
+    MapLayers layers = new MapLayers();
+    MapPoly border = new MapPoly();
+    border.addPoint(0, 0);
+    border.addPoint(1000, -1000);
+    layers.setBorders(Collections.singletonList(border));
+    return layers;
+  }
+
+  @Test
+  public void testPaintedInBackground() {
+    AtomicInteger painted = new AtomicInteger();
+    MapLayerCache cache = new MapLayerCache(layers(), painted::incrementAndGet);
+    assertNull(cache.get(WORLD));
+    await().atMost(10, TimeUnit.SECONDS).until(() -> painted.get() == 1);
+    BufferedImage image = cache.get(WORLD);
+    assertNotNull(image);
+    assertEquals(200, image.getWidth());
+    assertSame(image, cache.get(WORLD));
+
+    cache.clear();
+    assertNull(cache.get(WORLD));
+    await().atMost(10, TimeUnit.SECONDS).until(() -> painted.get() == 2);
+  }
+
+  @Test
+  public void testLeastRecentlyUsedIsDropped() {
+    AtomicInteger painted = new AtomicInteger();
+    MapLayerCache cache = new MapLayerCache(layers(), painted::incrementAndGet);
+    for (int i = 0; i <= MapLayerCache.MAX_IMAGES; i++) {
+      MapView view = new MapView(true, 0, 0, i, 200, 100);
+      cache.get(view);
+      int expected = i + 1;
+      await().atMost(10, TimeUnit.SECONDS).until(() -> painted.get() == expected);
+    }
+    assertNull(cache.get(new MapView(true, 0, 0, 0, 200, 100)));
+    assertNotNull(cache.get(new MapView(true, 0, 0, MapLayerCache.MAX_IMAGES, 200, 100)));
+  }
+
+  @Test
+  public void testLocate() {
+    MapView ortho = new MapView(false, 0, 0, 1, 200, 100);
+    Point2D.Double center = MapLayers.locate(ortho, ortho);
+    assertEquals(100, center.x, 0.001);
+    assertEquals(50, center.y, 0.001);
+    // the other side of the globe
+    assertNull(MapLayers.locate(new MapView(false, 0, Math.PI, 1, 200, 100), ortho));
+  }
+}
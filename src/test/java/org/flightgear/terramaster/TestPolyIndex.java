@@ -0,0 +1,50 @@
+package org.flightgear.terramaster;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.flightgear.terramaster.gshhs.MapPoly;
+import org.flightgear.terramaster.gshhs.PolyIndex;
+import org.junit.Test;
+
+public class TestPolyIndex {
+
+  /** A polygon over the box, in 1/100 degree with the latitude negated like MapPoly */
+  private static MapPoly box(int west, int south, int east, int north) {
+    MapPoly p = new MapPoly();
+    p.addPoint(west * 100, -south * 100);
+    p.addPoint(east * 100, -south * 100);
+    p.addPoint(east * 100, -north * 100);
+    p.addPoint(west * 100, -north * 100);
+    return p;
+  }
+
+  private static int[] query(PolyIndex index, double west, double south, double east, double north) {
+    int[] out = new int[index.size()];
+    return Arrays.copyOf(out, index.query(west, south, east, north, out));
+  }
+
+  @Test
+  public void testQuery() {
+    List<MapPoly> polys = Arrays.asList(box(-5, 50, 2, 59), box(140, -40, 155, -10), new MapPoly(),
+        box(-10, 35, 40, 70));
+    PolyIndex index = new PolyIndex(polys);
+    assertArrayEquals(new int[] { 0, 3 }, query(index, -1, 51, 1, 52));
+    assertArrayEquals(new int[] { 1 }, query(index, 145, -35, 150, -30));
+    assertArrayEquals(new int[] { 0, 1, 3 }, query(index, -180, -90, 180, 90));
+    assertEquals(0, query(index, -100, -50, -90, -40).length);
+  }
+
+  @Test
+  public void testDateLine() {
+    // Chukotka is stored beyond 180
+    List<MapPoly> polys = Arrays.asList(box(175, 64, 190, 70), box(-175, -20, -170, -15));
+    PolyIndex index = new PolyIndex(polys);
+    assertArrayEquals(new int[] { 0 }, query(index, -175, 65, -171, 66));
+    assertArrayEquals(new int[] { 1 }, query(index, 170, -19, 190, -16));
+    assertArrayEquals(new int[] { 1 }, query(index, 170, -19, -172, -16));
+  }
+}
@@ -0,0 +1,67 @@
+package org.flightgear.terramaster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.flightgear.terramaster.gshhs.MapPoly;
+import org.flightgear.terramaster.gshhs.PolyPyramid;
+import org.junit.Test;
+
+public class TestPolyPyramid {
+
+  /** A line with a point every 1/100 degree rising to a corner of the given height in the middle */
+  private static MapPoly line(int corner) {
+    MapPoly p = new MapPoly();
+    for (int x = 0; x <= 1000; x++) {
+      p.addPoint(x, corner * (500 - Math.abs(x - 500)) / 500);
+    }
+    return p;
+  }
+
+  /** A small square, in 1/100 degree */
+  private static MapPoly island(int size) {
+    MapPoly p = new MapPoly();
+    p.addPoint(0, 0);
+    p.addPoint(size, 0);
+    p.addPoint(size, size);
+    p.addPoint(0, size);
+    p.addPoint(0, 0);
+    return p;
+  }
+
+  @Test
+  public void testLevels() {
+    List<MapPoly> polys = Arrays.asList(line(0), line(50));
+    PolyPyramid pyramid = new PolyPyramid(polys, false);
+    assertSame(polys, pyramid.getLevel(0.01).polys);
+
+    PolyPyramid.Level level = pyramid.getLevel(0.1);
+    assertSame(level, pyramid.getLevel(0.1));
+    assertEquals(2, level.polys.size());
+    // the straight line keeps its ends
+    assertEquals(2, level.polys.get(0).npoints);
+    // the corner is bigger than the tolerance
+    assertEquals(3, level.polys.get(1).npoints);
+    assertEquals(50, level.polys.get(1).ypoints[1]);
+
+    assertEquals(2, pyramid.getLevel(1).polys.get(1).npoints);
+  }
+
+  @Test
+  public void testSmallPolygonsAreDropped() {
+    List<MapPoly> polys = Arrays.asList(island(10), island(500));
+    PolyPyramid pyramid = new PolyPyramid(polys, true);
+    assertEquals(2, pyramid.getLevel(0.1).polys.size());
+    List<MapPoly> coarse = pyramid.getLevel(10).polys;
+    assertEquals(1, coarse.size());
+    assertEquals(5, coarse.get(0).npoints);
+  }
+
+  @Test
+  public void testEmpty() {
+    assertEquals(0, new PolyPyramid(null, true).getLevel(10).polys.size());
+  }
+}
@@ -0,0 +1,68 @@
+package org.flightgear.terramaster;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestSceneryInventory {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Path root;
+  private SceneryInventory inventory;
+
+  @Before
+  public void setUp() throws IOException {
+    root = folder.getRoot().toPath();
+    Files.createDirectories(root.resolve("Terrain/e000n50/e001n51"));
+    inventory = new SceneryInventory(Collections.singletonMap(TerraSyncRootDirectoryType.WS20, root));
+    inventory.start();
+  }
+
+  @After
+  public void tearDown() {
+    inventory.close();
+  }
+
+  @Test
+  public void testScan() {
+    TileData t = inventory.getMap().get(TileName.getTile("e001n51"));
+    assertNotNull(t);
+    assertTrue(t.hasDirectory(TerraSyncRootDirectoryType.WS20, TerraSyncDirectoryType.TERRAIN));
+    assertFalse(t.hasDirectory(TerraSyncRootDirectoryType.WS20, TerraSyncDirectoryType.OBJECTS));
+  }
+
+  @Test
+  public void testWatch() throws Exception {
+    // a new tile in a block that is there
+    TileName tile = TileName.getTile("e002n51");
+    Files.createDirectories(root.resolve("Terrain/e000n50/e002n51"));
+    // polling watch services (macOS) take a few seconds
+    await().atMost(15, TimeUnit.SECONDS).until(() -> inventory.getMap().containsKey(tile));
+
+    // a new type and a new block in one go
+    Files.createDirectories(root.resolve("Objects/e010n50/e011n51"));
+    TileName other = TileName.getTile("e011n51");
+    await().atMost(15, TimeUnit.SECONDS).until(() -> inventory.getMap().containsKey(other));
+
+    Files.delete(root.resolve("Terrain/e000n50/e002n51"));
+    await().atMost(15, TimeUnit.SECONDS).until(() -> !inventory.getMap().containsKey(tile));
+    assertNull(inventory.getMap().get(tile));
+    assertNotNull(inventory.getMap().get(TileName.getTile("e001n51")));
+  }
+}
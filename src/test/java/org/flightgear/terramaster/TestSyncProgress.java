@@ -0,0 +1,117 @@
+package org.flightgear.terramaster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.swing.SwingUtilities;
+
+import org.junit.Test;
+
+public class TestSyncProgress {
+
+  /** The clock the progress reads */
+  private final AtomicLong now = new AtomicLong(1000);
+  /** The deliveries scheduled and their delays, run by the tests */
+  private final List<Runnable> tasks = new ArrayList<>();
+  private final List<Integer> delays = new ArrayList<>();
+  private final List<SyncProgress.Update> updates = new ArrayList<>();
+
+  private SyncProgress progress() {
+    return new SyncProgress(updates::add, now::get, (delay, task) -> {
+      synchronized (tasks) {
+        delays.add(delay);
+        tasks.add(task);
+      }
+    });
+  }
+
+  private void runTasks() {
+    List<Runnable> due;
+    synchronized (tasks) {
+      due = new ArrayList<>(tasks);
+      tasks.clear();
+    }
+    due.forEach(Runnable::run);
+  }
+
+  @Test
+  public void testCoalesced() throws InterruptedException {
+    SyncProgress progress = progress();
+    progress.start(10000);
+    Thread[] workers = new Thread[4];
+    for (int i = 0; i < workers.length; i++) {
+      workers[i] = new Thread(() -> {
+        for (int j = 0; j < 2500; j++) {
+          progress.done(1);
+        }
+      });
+      workers[i].start();
+    }
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    // one delivery for 10001 reports
+    assertEquals(1, tasks.size());
+    runTasks();
+    assertEquals(1, updates.size());
+    SyncProgress.Update u = updates.get(0);
+    assertTrue(u.isStarted());
+    assertEquals(10000, u.getExtended());
+    assertEquals(10000, u.getDone());
+  }
+
+  @Test
+  public void testFinishDropsEarlierReports() {
+    SyncProgress progress = progress();
+    progress.extend(5);
+    progress.done(3);
+    progress.finish();
+    progress.start(7);
+    runTasks();
+    assertEquals(1, updates.size());
+    SyncProgress.Update u = updates.get(0);
+    assertTrue(u.isFinished());
+    assertTrue(u.isStarted());
+    assertEquals(7, u.getExtended());
+    assertEquals(0, u.getDone());
+  }
+
+  @Test
+  public void testRateLimited() {
+    SyncProgress progress = progress();
+    progress.done(1);
+    runTasks();
+    // 30 ms after the last delivery the next waits for the rest of the frame
+    now.addAndGet(30);
+    progress.done(1);
+    runTasks();
+    // a frame later it goes at once
+    now.addAndGet(SyncProgress.FRAME_INTERVAL);
+    progress.done(1);
+    runTasks();
+    assertEquals(3, updates.size());
+    assertEquals(0, (int) delays.get(0));
+    assertEquals(SyncProgress.FRAME_INTERVAL - 30, (int) delays.get(1));
+    assertEquals(0, (int) delays.get(2));
+  }
+
+  @Test
+  public void testDeliveredOnEdt() throws InterruptedException {
+    AtomicReference<Boolean> onEdt = new AtomicReference<>();
+    CountDownLatch delivered = new CountDownLatch(1);
+    SyncProgress progress = new SyncProgress(u -> {
+      onEdt.set(SwingUtilities.isEventDispatchThread());
+      delivered.countDown();
+    });
+    progress.done(1);
+    assertTrue(delivered.await(10, TimeUnit.SECONDS));
+    assertTrue(onEdt.get());
+  }
+}
@@ -0,0 +1,85 @@
+package org.flightgear.terramaster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class TestSyncQueue {
+
+  private final TileName near = new TileName("", 50, 8);
+  private final TileName middle = new TileName("", 52, 12);
+  private final TileName far = new TileName("", -30, 145);
+
+  @Test
+  public void testDedupe() {
+    SyncQueue queue = new SyncQueue();
+    assertTrue(queue.add(near));
+    assertFalse(queue.add(new TileName("", 50, 8)));
+    assertEquals(1, queue.size());
+    assertTrue(queue.remove(near));
+    assertFalse(queue.remove(near));
+    assertTrue(queue.isEmpty());
+  }
+
+  @Test
+  public void testDistance() {
+    SyncQueue queue = new SyncQueue();
+    queue.setOrder(SyncOrder.byDistance(50, 8));
+    queue.add(far);
+    queue.add(middle);
+    queue.add(near);
+    ModelsSync models = new ModelsSync("");
+    queue.add(models);
+    assertEquals(Arrays.asList(models, near, middle, far), queue.snapshot());
+    assertSame(near, queue.first(s -> s == models));
+    assertNull(queue.first(s -> true));
+  }
+
+  @Test
+  public void testRoute() {
+    SyncQueue queue = new SyncQueue();
+    queue.add(near);
+    queue.add(far);
+    queue.add(middle);
+    assertEquals(Arrays.asList(near, far, middle), queue.snapshot());
+    queue.setOrder(SyncOrder.byRoute(Arrays.asList(middle, near)));
+    assertEquals(Arrays.asList(middle, near, far), queue.snapshot());
+  }
+
+  @Test
+  public void testRequeuedWhileSyncing() {
+    SyncQueue queue = new SyncQueue();
+    queue.add(near);
+    queue.add(far);
+    SyncQueue.Entry entry = queue.firstEntry(s -> false);
+    assertSame(near, entry.getSyncable());
+    // requested again while the worker is at it
+    assertFalse(queue.add(near));
+    assertFalse(queue.remove(entry));
+    assertTrue(queue.contains(near));
+    // the second round removes it
+    entry = queue.firstEntry(s -> false);
+    assertTrue(queue.remove(entry));
+    assertFalse(queue.contains(near));
+    assertFalse(queue.remove(entry));
+    // a new request after the removal isn't touched by the old entry
+    queue.add(near);
+    assertFalse(queue.remove(entry));
+    assertEquals(Arrays.asList(far, near), queue.snapshot());
+  }
+
+  @Test
+  public void testSnapshot() {
+    SyncQueue queue = new SyncQueue();
+    queue.add(near);
+    assertSame(queue.snapshot(), queue.snapshot());
+    queue.add(far);
+    assertEquals(2, queue.snapshot().size());
+  }
+}
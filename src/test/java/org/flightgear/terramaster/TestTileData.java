@@ -0,0 +1,56 @@
+package org.flightgear.terramaster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.Test;
+
+public class TestTileData {
+
+  private static final File TERRAIN = new File("ws2/Terrain/e000n50/e001n51");
+  private static final File OBJECTS = new File("ws2/Objects/e000n50/e001n51");
+  private static final File VPB = new File("ws3/vpb/e000n50/e001n51.zip");
+
+  @Test
+  public void testSetAndRemove() {
+    TileData t = new TileData();
+    assertTrue(t.isEmpty());
+    t.restoreDirTypePath(TerraSyncRootDirectoryType.WS30, TerraSyncDirectoryType.VPB, VPB);
+    t.restoreDirTypePath(TerraSyncRootDirectoryType.WS20, TerraSyncDirectoryType.OBJECTS, OBJECTS);
+    t.restoreDirTypePath(TerraSyncRootDirectoryType.WS20, TerraSyncDirectoryType.TERRAIN, TERRAIN);
+
+    assertEquals(TERRAIN, t.getDir(TerraSyncRootDirectoryType.WS20, TerraSyncDirectoryType.TERRAIN));
+    assertEquals(OBJECTS, t.getDir(TerraSyncRootDirectoryType.WS20, TerraSyncDirectoryType.OBJECTS));
+    assertEquals(VPB, t.getDir(TerraSyncRootDirectoryType.WS30, TerraSyncDirectoryType.VPB));
+    assertNull(t.getDir(TerraSyncRootDirectoryType.WS30, TerraSyncDirectoryType.TERRAIN));
+    assertTrue(t.hasDirectory(TerraSyncDirectoryType.VPB));
+    assertFalse(t.hasDirectory(TerraSyncDirectoryType.BUILDINGS));
+
+    t.removeDirType(TerraSyncRootDirectoryType.WS20, TerraSyncDirectoryType.OBJECTS);
+    assertFalse(t.hasDirectory(TerraSyncRootDirectoryType.WS20, TerraSyncDirectoryType.OBJECTS));
+    assertEquals(TERRAIN, t.getDir(TerraSyncRootDirectoryType.WS20, TerraSyncDirectoryType.TERRAIN));
+    assertEquals(VPB, t.getDir(TerraSyncRootDirectoryType.WS30, TerraSyncDirectoryType.VPB));
+
+    t.removeDirType(TerraSyncRootDirectoryType.WS20, TerraSyncDirectoryType.TERRAIN);
+    t.removeDirType(TerraSyncRootDirectoryType.WS30, TerraSyncDirectoryType.VPB);
+    assertTrue(t.isEmpty());
+  }
+
+  @Test
+  public void testHasAll() {
+    TileData t = new TileData();
+    t.restoreDirTypePath(TerraSyncRootDirectoryType.WS20, TerraSyncDirectoryType.TERRAIN, TERRAIN);
+    TerraSyncDirectoryType[] types = { TerraSyncDirectoryType.TERRAIN, TerraSyncDirectoryType.OBJECTS,
+        TerraSyncDirectoryType.AIRPORTS };
+    assertFalse(t.hasAllDirTypes(TerraSyncRootDirectoryType.WS20, types));
+    t.restoreDirTypePath(TerraSyncRootDirectoryType.WS20, TerraSyncDirectoryType.OBJECTS, OBJECTS);
+    // airports aren't tiles
+    assertTrue(t.hasAllDirTypes(TerraSyncRootDirectoryType.WS20, types));
+    assertTrue(t.hasAll(0));
+    assertFalse(t.hasAll(TileData.maskOf(TerraSyncRootDirectoryType.WS30, types)));
+  }
+}
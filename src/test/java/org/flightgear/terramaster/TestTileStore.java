@@ -0,0 +1,94 @@
+package org.flightgear.terramaster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class TestTileStore {
+
+  private static final TileName TILE = TileName.getTile("e001n51");
+
+  @Test
+  public void testPutGetRemove() {
+    TileStore store = new TileStore();
+    assertTrue(store.isEmpty());
+    TileData t = new TileData();
+    assertNull(store.put(TILE, t));
+    assertEquals(1, store.size());
+    assertSame(t, store.get(TILE));
+    assertSame(t, store.get(TILE.getId()));
+    // an equal tile that isn't the shared instance
+    assertSame(t, store.get(new TileName("ws2", "e001n51")));
+    assertTrue(store.containsKey(TILE));
+    assertFalse(store.containsKey("e001n51"));
+    assertSame(t, store.remove(TILE));
+    assertTrue(store.isEmpty());
+    assertNull(store.get(-1));
+    assertNull(store.get(TileName.TILE_COUNT));
+  }
+
+  @Test
+  public void testCompute() {
+    TileStore store = new TileStore();
+    File terrain = new File("ws2/Terrain/e000n50/e001n51");
+    store.compute(TILE, (k, t) -> {
+      t = t == null ? new TileData() : t;
+      t.restoreDirTypePath(TerraSyncRootDirectoryType.WS20, TerraSyncDirectoryType.TERRAIN, terrain);
+      return t;
+    });
+    assertTrue(store.get(TILE).hasDirectory(TerraSyncRootDirectoryType.WS20, TerraSyncDirectoryType.TERRAIN));
+    // a tile left empty is dropped
+    store.computeIfPresent(TILE, (k, t) -> {
+      t.removeDirType(TerraSyncRootDirectoryType.WS20, TerraSyncDirectoryType.TERRAIN);
+      return t.isEmpty() ? null : t;
+    });
+    assertNull(store.get(TILE));
+    assertEquals(0, store.size());
+  }
+
+  @Test
+  public void testIterate() {
+    TileStore store = new TileStore();
+    TileName first = TileName.getTile("w180s90");
+    TileName last = TileName.getTile("e179n90");
+    store.put(last, new TileData());
+    store.put(TILE, new TileData());
+    store.put(first, new TileData());
+    Iterator<Map.Entry<TileName, TileData>> i = store.entrySet().iterator();
+    assertSame(first, i.next().getKey());
+    assertSame(TILE, i.next().getKey());
+    i.remove();
+    assertSame(last, i.next().getKey());
+    assertFalse(i.hasNext());
+    assertEquals(2, store.size());
+    assertFalse(store.containsKey(TILE));
+  }
+
+  @Test
+  public void testConcurrentUpdates() throws InterruptedException {
+    TileStore store = new TileStore();
+    Thread[] workers = new Thread[4];
+    for (int w = 0; w < workers.length; w++) {
+      workers[w] = new Thread(() -> {
+        for (int id = 0; id < TileName.TILE_COUNT; id++) {
+          store.computeIfAbsent(TileName.getTile(id), k -> new TileData());
+        }
+      });
+      workers[w].start();
+    }
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    assertEquals(TileName.TILE_COUNT, store.size());
+    store.clear();
+    assertTrue(store.isEmpty());
+  }
+}
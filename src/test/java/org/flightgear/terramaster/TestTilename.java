@@ -1,6 +1,8 @@
 package org.flightgear.terramaster;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
@@ -77,4 +79,28 @@ public class TestTilename {
     TileName tileName2 = new TileName("", 87, 5).getNeighbour(-1, 1);
     assertTrue(tileName1.equals(tileName2));
   }
+
+  @Test
+  public void testShared() {
+    TileName t = TileName.getTile("w123s45");
+    assertEquals(-45, t.getLat());
+    assertEquals(-123, t.getLon());
+    assertSame(t, TileName.getTile(-123, -45));
+    assertSame(t, TileName.getTile(t.getId()));
+    assertSame(TileName.getTile("e179n90"), TileName.getTile(TileName.TILE_COUNT - 1));
+    assertSame(TileName.getTile("w180s90"), TileName.getTile(0));
+  }
+
+  @Test
+  public void testInvalid() {
+    assertNull(TileName.getTile("e180n00"));
+    assertNull(TileName.getTile("e000n91"));
+    assertNull(TileName.getTile("w000n10"));
+    assertNull(TileName.getTile("x000n10"));
+    assertNull(TileName.getTile("e00an10"));
+    assertNull(TileName.getTile("e000n10.zip"));
+    assertNull(TileName.getTile(180, 0));
+    assertNull(TileName.getTile(TileName.TILE_COUNT));
+    assertNull(new TileName("", 90, 3).getNeighbour(0, 1));
+  }
 }
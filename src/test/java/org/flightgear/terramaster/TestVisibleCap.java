@@ -0,0 +1,51 @@
+package org.flightgear.terramaster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestVisibleCap {
+
+  @Test
+  public void testSameAsHaversine() {
+    double latitude = Math.toRadians(-51);
+    double longitude = Math.toRadians(-170);
+    double radius = MapPanel.HALFPI - 0.1;
+    VisibleCap cap = new VisibleCap(latitude, longitude, radius);
+    Random random = new Random(42);
+    for (int i = 0; i < 100000; i++) {
+      int lon = random.nextInt(54000) - 18000;
+      int lat = random.nextInt(18001) - 9000;
+      double l = Math.toRadians(lon / 100.0);
+      double b = Math.toRadians(lat / 100.0);
+      double distance = CoordinateCalculation.oldHaversine(b, l, latitude, longitude);
+      assertEquals(Math.cos(distance), cap.cosDistance(l, b), 1e-9);
+      if (Math.abs(distance - radius) < 1e-9) {
+        continue;
+      }
+      assertEquals(lon + " " + lat, distance < radius, cap.contains(l, b));
+      assertEquals(lon + " " + lat, distance < radius, cap.containsCentidegrees(lon, lat));
+    }
+  }
+
+  @Test
+  public void testWholeGlobe() {
+    VisibleCap cap = new VisibleCap(0, 0, MapPanel.TWOPI);
+    assertTrue(cap.containsCentidegrees(18000, 0));
+    assertTrue(cap.contains(Math.PI, 0));
+    assertTrue(cap.containsCentidegrees(0, 9000));
+  }
+
+  @Test
+  public void testIsFor() {
+    VisibleCap cap = new VisibleCap(0.5, 1, 1.2);
+    assertTrue(cap.isFor(0.5, 1, 1.2));
+    assertFalse(cap.isFor(0.5, 1, MapPanel.TWOPI));
+    assertTrue(cap.containsCentidegrees(1000, 0));
+    assertFalse(cap.containsCentidegrees(-10000, 0));
+  }
+}
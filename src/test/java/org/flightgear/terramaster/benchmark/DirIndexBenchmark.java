@@ -0,0 +1,104 @@
+package org.flightgear.terramaster.benchmark;
+
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.flightgear.terramaster.DirIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Parsing a large Models .dirindex with {@link DirIndex} against the four regex split passes
+ * HTTPTerraSync used to do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DirIndexBenchmark {
+
+  @Param({ "1000", "20000" })
+  int entries;
+
+  String text;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(42);
+    StringBuilder sb = new StringBuilder("version:1\npath:Models/Misc\ntime:20240101-00:00Z\n");
+    for (int i = 0; i < entries; i++) {
+      char type = i % 10 == 0 ? 'd' : 'f';
+      sb.append(type).append(":model").append(i).append(type == 'd' ? "" : ".ac").append(':');
+      for (int j = 0; j < 40; j++) {
+        sb.append(Character.forDigit(random.nextInt(16), 16));
+      }
+      if (type != 'd') {
+        sb.append(':').append(random.nextInt(1000000));
+      }
+      sb.append('\n');
+    }
+    text = sb.toString();
+  }
+
+  @Benchmark
+  public void parse(Blackhole bh) {
+    DirIndex index = DirIndex.parse(text);
+    bh.consume(index.getByBaseName("model4711"));
+    bh.consume(index.get("model4711.ac"));
+  }
+
+  @Benchmark
+  public void legacySplit(Blackhole bh) {
+    String[] lines = text.split("\r?\n");
+    HashMap<String, String> lookup = new HashMap<>();
+    HashMap<String, String> typeLookup = new HashMap<>();
+    HashMap<String, String> fileLookup = new HashMap<>();
+    HashMap<String, String> hashLookup = new HashMap<>();
+    for (String line : lines) {
+      String[] splitLine = line.split(":");
+      if (splitLine.length > 2) {
+        lookup.put(splitLine[1], splitLine[2]);
+      }
+    }
+    for (String line : lines) {
+      String[] splitLine = line.split(":");
+      if (splitLine.length > 2) {
+        typeLookup.put(splitLine[1].split("\\.")[0], splitLine[0]);
+      }
+    }
+    for (String line : lines) {
+      String[] splitLine = line.split(":");
+      if (splitLine.length > 2) {
+        fileLookup.put(splitLine[1].split("\\.")[0], splitLine[1]);
+      }
+    }
+    for (String line : lines) {
+      String[] splitLine = line.split(":");
+      if (splitLine.length > 2) {
+        hashLookup.put(splitLine[1].split("\\.")[0], splitLine[2]);
+      }
+    }
+    bh.consume(typeLookup.get("model4711"));
+    bh.consume(lookup.get("model4711.ac"));
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(DirIndexBenchmark.class.getSimpleName()).build()).run();
+  }
+}